@@ -0,0 +1,344 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class reads and writes the product catalog of the ECommerceSystem in a
+ * compact binary format, which loads far faster than the text format of
+ * products.txt because nothing has to be parsed. Unlike the text format, it
+ * also stores the sizes, colors, and stock of every variant of {@link Shoes},
+ * and the current stock of every format of a {@link Book}.
+ *
+ * The file starts with a fixed-width header that holds the number of entries
+ * of every section. It is followed by a string table, which stores every
+ * distinct string once, and then by one packed column per field of the
+ * products. Every number is little-endian. The whole file is memory-mapped
+ * when it is read, and each column is copied out with a single bulk read.
+ *
+ * <pre>
+ * header    magic, version, products, strings, string bytes, stock, options, 0
+ * strings   int[strings] end offsets, byte[string bytes] UTF-8
+ * columns   int[products] id, byte[products] type, byte[products] category,
+ *           double[products] price, int[products] name, title, author, year,
+ *           int[products] stock end, int[stock] stock,
+ *           int[products] size count, int[products] option end, int[options] option
+ * </pre>
+ *
+ * Strings are stored as their index in the string table, or -1 if there is no
+ * string. The stock and options of a product run from the end of the previous
+ * product up to its own end. The options of a shoe are its sizes followed by
+ * its colors.
+ *
+ * @author Ali Rizvi (501039655)
+ * @see ProductCatalog
+ * @see ECommerceSystem
+ */
+public class BinaryCatalog {
+    private static final int MAGIC = 0x54414345; // "ECAT"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+
+    private static final byte PRODUCT = 0;
+    private static final byte BOOK = 1;
+    private static final byte SHOES = 2;
+
+    private BinaryCatalog() {
+    }
+
+    /**
+     * Writes every product of a catalog to a file, with the stock they have at
+     * the time. The file is replaced atomically, so a reader never sees it half
+     * written.
+     *
+     * @param catalog The catalog to write.
+     * @param file    The file to write to.
+     *
+     * @throws IOException If the file could not be written.
+     */
+    public static void write(ProductCatalog catalog, Path file) throws IOException {
+        int n = catalog.size();
+
+        int[] ids = new int[n];
+        byte[] types = new byte[n];
+        byte[] categories = new byte[n];
+        double[] prices = new double[n];
+        int[] names = new int[n];
+        int[] titles = new int[n];
+        int[] authors = new int[n];
+        int[] years = new int[n];
+        int[] stockEnds = new int[n];
+        int[] sizeCounts = new int[n];
+        int[] optionEnds = new int[n];
+
+        IntList stock = new IntList();
+        IntList options = new IntList();
+        StringTable strings = new StringTable();
+
+        int i = 0;
+        for (Product product : catalog.getAll()) {
+            ids[i] = Identifiers.parse(product.getId());
+            categories[i] = (byte) product.getCategory().ordinal();
+            prices[i] = product.getPrice();
+            names[i] = strings.indexOf(product.getName());
+            titles[i] = -1;
+            authors[i] = -1;
+
+            if (product.getClass() == Book.class) {
+                Book book = (Book) product;
+
+                types[i] = BOOK;
+                titles[i] = strings.indexOf(book.getTitle());
+                authors[i] = strings.indexOf(book.getAuthor());
+                years[i] = book.getYear();
+            } else if (product.getClass() == Shoes.class) {
+                Shoes shoes = (Shoes) product;
+
+                types[i] = SHOES;
+                sizeCounts[i] = shoes.getSizes().length;
+
+                for (String size : shoes.getSizes()) {
+                    options.add(strings.indexOf(size));
+                }
+
+                for (String color : shoes.getColors()) {
+                    options.add(strings.indexOf(color));
+                }
+            } else if (product.getClass() == Product.class) {
+                types[i] = PRODUCT;
+            } else {
+                throw new IllegalArgumentException(
+                        String.format("Product %s Has Unsupported Type %s", product.getId(), product.getClass()));
+            }
+
+            for (int variant = 0; variant < product.getVariantCount(); variant++) {
+                stock.add(product.getStock(variant));
+            }
+
+            stockEnds[i] = stock.size;
+            optionEnds[i] = options.size;
+            i++;
+        }
+
+        long length = HEADER_SIZE + 4L * strings.size() + strings.bytes.size + 4L * n + n + n + 8L * n
+                + 4L * 4 * n + 4L * n + 4L * stock.size + 4L * n + 4L * n + 4L * options.size;
+
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(String.format("Catalog Of %d Products Is Too Large", n));
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) length).order(ByteOrder.LITTLE_ENDIAN);
+
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(strings.size()).putInt(strings.bytes.size)
+                .putInt(stock.size).putInt(options.size).putInt(0);
+
+        putInts(buffer, strings.ends.values, strings.ends.size);
+        buffer.put(strings.bytes.values, 0, strings.bytes.size);
+
+        putInts(buffer, ids, n);
+        buffer.put(types);
+        buffer.put(categories);
+        buffer.asDoubleBuffer().put(prices);
+        buffer.position(buffer.position() + 8 * n);
+        putInts(buffer, names, n);
+        putInts(buffer, titles, n);
+        putInts(buffer, authors, n);
+        putInts(buffer, years, n);
+        putInts(buffer, stockEnds, n);
+        putInts(buffer, stock.values, stock.size);
+        putInts(buffer, sizeCounts, n);
+        putInts(buffer, optionEnds, n);
+        putInts(buffer, options.values, options.size);
+
+        buffer.flip();
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+
+            channel.force(true);
+        }
+
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads every product of a file written by
+     * {@link #write(ProductCatalog, Path)}.
+     *
+     * @param file The file to read.
+     * @return The products of the file, in the order they were written.
+     *
+     * @throws IOException If the file could not be read, or is not a valid
+     *                     catalog file.
+     */
+    public static List<Product> read(Path file) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(String.format("Catalog File %s Has Invalid Length %d", file, channel.size()));
+            }
+
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException(String.format("Catalog File %s Has Unknown Format", file));
+        }
+
+        int n = buffer.getInt();
+        int stringCount = buffer.getInt();
+        int stringBytes = buffer.getInt();
+        int stockCount = buffer.getInt();
+        int optionCount = buffer.getInt();
+        buffer.getInt();
+
+        try {
+            int[] stringEnds = getInts(buffer, stringCount);
+            byte[] blob = new byte[stringBytes];
+            buffer.get(blob);
+
+            String[] strings = new String[stringCount];
+            for (int i = 0, start = 0; i < stringCount; start = stringEnds[i++]) {
+                strings[i] = new String(blob, start, stringEnds[i] - start, StandardCharsets.UTF_8);
+            }
+
+            int[] ids = getInts(buffer, n);
+            byte[] types = new byte[n];
+            buffer.get(types);
+            byte[] categories = new byte[n];
+            buffer.get(categories);
+            double[] prices = new double[n];
+            buffer.asDoubleBuffer().get(prices);
+            buffer.position(buffer.position() + 8 * n);
+            int[] names = getInts(buffer, n);
+            int[] titles = getInts(buffer, n);
+            int[] authors = getInts(buffer, n);
+            int[] years = getInts(buffer, n);
+            int[] stockEnds = getInts(buffer, n);
+            int[] stock = getInts(buffer, stockCount);
+            int[] sizeCounts = getInts(buffer, n);
+            int[] optionEnds = getInts(buffer, n);
+            int[] options = getInts(buffer, optionCount);
+
+            Product.Category[] allCategories = Product.Category.values();
+            List<Product> products = new ArrayList<>(n);
+
+            int stockStart = 0;
+            int optionStart = 0;
+
+            for (int i = 0; i < n; stockStart = stockEnds[i], optionStart = optionEnds[i++]) {
+                String id = Integer.toString(ids[i]);
+                String name = strings[names[i]];
+                Product.Category category = allCategories[categories[i]];
+
+                if (types[i] == BOOK) {
+                    products.add(new Book(name, id, prices[i], stock[stockStart], stock[stockStart + 1],
+                            stock[stockStart + 2], strings[titles[i]], strings[authors[i]], years[i]));
+                } else if (types[i] == SHOES) {
+                    String[] sizes = new String[sizeCounts[i]];
+                    String[] colors = new String[optionEnds[i] - optionStart - sizes.length];
+
+                    for (int j = 0; j < sizes.length; j++) {
+                        sizes[j] = strings[options[optionStart + j]];
+                    }
+
+                    for (int j = 0; j < colors.length; j++) {
+                        colors[j] = strings[options[optionStart + sizes.length + j]];
+                    }
+
+                    products.add(new Shoes(name, id, prices[i], sizes, colors,
+                            Arrays.copyOfRange(stock, stockStart, stockEnds[i])));
+                } else {
+                    products.add(new Product(name, id, prices[i], stock[stockStart], category));
+                }
+            }
+
+            return products;
+        } catch (RuntimeException e) {
+            // a truncated or inconsistent file runs past a buffer or an array
+            throw new IOException(String.format("Catalog File %s Is Corrupt", file), e);
+        }
+    }
+
+    private static void putInts(ByteBuffer buffer, int[] values, int length) {
+        buffer.asIntBuffer().put(values, 0, length);
+        buffer.position(buffer.position() + 4 * length);
+    }
+
+    private static int[] getInts(ByteBuffer buffer, int length) {
+        int[] values = new int[length];
+
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + 4 * length);
+
+        return values;
+    }
+
+    // A growable array of ints, so the stock and options are never boxed.
+    private static class IntList {
+        private int[] values = new int[16];
+        private int size;
+
+        private void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+
+            values[size++] = value;
+        }
+    }
+
+    // A growable array of bytes.
+    private static class ByteList {
+        private byte[] values = new byte[256];
+        private int size;
+
+        private void add(byte[] bytes) {
+            if (size + bytes.length > values.length) {
+                values = Arrays.copyOf(values, Math.max(size + bytes.length, values.length * 2));
+            }
+
+            System.arraycopy(bytes, 0, values, size, bytes.length);
+            size += bytes.length;
+        }
+    }
+
+    // Stores every distinct string once, in the order they were first seen.
+    private static class StringTable {
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private final IntList ends = new IntList();
+        private final ByteList bytes = new ByteList();
+
+        private int indexOf(String value) {
+            Integer index = indexes.get(value);
+
+            if (index == null) {
+                index = indexes.size();
+                indexes.put(value, index);
+
+                bytes.add(value.getBytes(StandardCharsets.UTF_8));
+                ends.add(bytes.size);
+            }
+
+            return index;
+        }
+
+        private int size() {
+            return indexes.size();
+        }
+    }
+}
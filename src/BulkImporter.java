@@ -0,0 +1,634 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+
+/**
+ * This class imports customers, orders, and ratings into the ECommerceSystem in
+ * bulk from a CSV file. The file is streamed in batches of lines, so it is
+ * never held in memory as a whole. The lines of every batch are parsed and
+ * validated in parallel on a fork/join pool, while the previous batch is being
+ * applied. The rows of a batch are then sorted and applied together.
+ *
+ * Every line of the file is one row, and its first field is the kind of the
+ * row, in any case:
+ *
+ * <pre>
+ * customer,&lt;name&gt;,&lt;address&gt;[,&lt;key&gt;]
+ * order,&lt;product ID&gt;,&lt;customer ID or key&gt;[,&lt;product options&gt;]
+ * rating,&lt;product ID&gt;,&lt;rating&gt;[,&lt;count&gt;]
+ * </pre>
+ *
+ * Fields may be enclosed in double quotes, so they can contain commas, and a
+ * double quote inside a quoted field is written as two. Quoted fields cannot
+ * span lines. Blank lines are skipped. Lines may end in either LF or CRLF.
+ *
+ * Orders and ratings must refer to products that are in the catalog. Orders
+ * must refer to customers that already exist by their customer ID. Customers
+ * are only given their customer ID when they are imported, so an order refers
+ * to a customer imported by the same file through the key of its customer row
+ * instead, which must be on an earlier line. Keys are unique within a file,
+ * and the customer of an order is looked up by key before customer ID.
+ *
+ * A row that cannot be imported does not stop the import. It is rejected, and
+ * reported as a {@link Problem}.
+ *
+ * @author Ali Rizvi (501039655)
+ * @see ECommerceSystem
+ * @see CatalogLoader
+ */
+public class BulkImporter {
+    /**
+     * The number of lines of every batch when no batch size is given.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 16_384;
+
+    private static final int LINES_PER_TASK = 1024;
+
+    // Customers are applied first, so the orders on later lines of the same batch
+    // can refer to them. Orders are applied by product, in the global order stock is reserved
+    // in, and ratings by product, so rows that touch the same product are
+    // applied together.
+    private static final Comparator<Row> APPLY_ORDER = Comparator.comparing(Row::getKind)
+            .thenComparing(row -> row.product != null ? row.product.getId() : "", Identifiers.ORDER)
+            .thenComparingInt(row -> row.variant)
+            .thenComparingLong(Row::getLine);
+
+    /**
+     * This interface applies a batch of rows that were parsed and validated.
+     *
+     * @author Ali Rizvi (501039655)
+     * @see BulkImporter
+     */
+    public interface Applier {
+        /**
+         * Applies a batch of rows.
+         *
+         * @param rows     The rows of the batch, in the order they are to be applied.
+         * @param rejected The list to add the problems with rows that could not be
+         *                 applied to.
+         */
+        void apply(List<Row> rows, List<Problem> rejected);
+    }
+
+    /**
+     * This enum represents the kinds of rows that can be imported.
+     *
+     * @author Ali Rizvi (501039655)
+     * @see BulkImporter
+     */
+    public enum Kind {
+        CUSTOMER, ORDER, RATING
+    }
+
+    private final Function<String, Product> products;
+    private final ForkJoinPool pool;
+    private final int batchSize;
+
+    /**
+     * Constructs a new importer that validates on the common fork/join pool, in
+     * batches of {@link #DEFAULT_BATCH_SIZE} lines.
+     *
+     * @param products The function that finds a product by its product ID, or
+     *                 returns null if it does not exist.
+     */
+    public BulkImporter(Function<String, Product> products) {
+        this(products, ForkJoinPool.commonPool(), DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Constructs a new importer that validates on a specific fork/join pool, in
+     * batches of a specific size.
+     *
+     * @param products  The function that finds a product by its product ID, or
+     *                  returns null if it does not exist.
+     * @param pool      The pool to validate on.
+     * @param batchSize The number of lines of every batch.
+     */
+    public BulkImporter(Function<String, Product> products, ForkJoinPool pool, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException(String.format("Invalid Batch Size: %d", batchSize));
+        }
+
+        this.products = products;
+        this.pool = pool;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Imports every row of a CSV file.
+     *
+     * @param file    The CSV file.
+     * @param applier The applier the batches of rows are applied with, one batch
+     *                at a time, in the order of the file.
+     * @return The number of rows that were read and imported, and the problems with
+     *         every row that was rejected.
+     *
+     * @throws IOException If the file could not be read.
+     */
+    public Result load(Path file, Applier applier) throws IOException {
+        long rows = 0;
+        long imported = 0;
+        List<Problem> problems = new ArrayList<>();
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            long line = 0;
+            ForkJoinTask<Batch> pending = null;
+
+            while (true) {
+                List<String> lines = new ArrayList<>(batchSize);
+                String text;
+
+                while (lines.size() < batchSize && (text = reader.readLine()) != null) {
+                    lines.add(text);
+                }
+
+                // the next batch is validated while the previous one is applied
+                ForkJoinTask<Batch> next = lines.isEmpty() ? null : pool.submit(new BatchTask(lines, line + 1));
+                line += lines.size();
+
+                if (pending != null) {
+                    Batch batch = pending.join();
+                    int rejected = batch.problems.size();
+
+                    applier.apply(batch.rows, batch.problems);
+                    rows += batch.rows.size() + rejected;
+                    imported += batch.rows.size() - (batch.problems.size() - rejected);
+                    problems.addAll(batch.problems);
+                }
+
+                if (next == null) {
+                    break;
+                }
+
+                pending = next;
+            }
+        }
+
+        problems.sort(Comparator.comparingLong(Problem::getLine));
+        return new Result(rows, imported, problems);
+    }
+
+    // Parses and validates a single line into a row.
+    private Row parse(String text, long line) {
+        List<String> fields = split(text);
+        Kind kind;
+
+        try {
+            kind = Kind.valueOf(fields.get(0).trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(String.format("Unknown Row Kind: %s", fields.get(0)));
+        }
+
+        Row row = new Row(kind, line);
+
+        switch (kind) {
+        case CUSTOMER:
+            expectFields(fields, 3, 4);
+            row.name = fields.get(1);
+            row.address = fields.get(2);
+            row.customerKey = fields.size() > 3 && !fields.get(3).equals("") ? fields.get(3) : null;
+
+            if (row.name.equals("")) {
+                throw new Customer.InvalidNameException();
+            }
+
+            if (row.address.equals("")) {
+                throw new Customer.InvalidAddressException();
+            }
+            break;
+        case ORDER:
+            expectFields(fields, 3, 4);
+            row.product = findProduct(fields.get(1));
+            row.customerId = fields.get(2);
+            row.productOptions = fields.size() > 3 ? fields.get(3) : "";
+            row.variant = row.product.parseOptions(row.productOptions);
+
+            if (row.variant == Product.INVALID_VARIANT) {
+                throw new Product.InvalidOptionsException(row.product, row.productOptions);
+            }
+            break;
+        case RATING:
+            expectFields(fields, 3, 4);
+            row.product = findProduct(fields.get(1));
+            row.rating = Integer.parseInt(fields.get(2));
+            row.count = fields.size() > 3 ? Long.parseLong(fields.get(3)) : 1;
+
+            if (row.rating < RatingHistogram.MIN_RATING || row.rating > RatingHistogram.MAX_RATING) {
+                throw new Product.InvalidRatingException(row.product, row.rating);
+            }
+
+            if (row.count <= 0) {
+                throw new IllegalArgumentException(String.format("Invalid Rating Count: %d", row.count));
+            }
+            break;
+        }
+
+        return row;
+    }
+
+    private Product findProduct(String productId) {
+        Product product = products.apply(productId);
+
+        if (product == null) {
+            throw new Product.NotFoundException(productId);
+        }
+
+        return product;
+    }
+
+    private static void expectFields(List<String> fields, int min, int max) {
+        if (fields.size() < min || fields.size() > max) {
+            throw new IllegalArgumentException(min == max
+                    ? String.format("Expected %d Fields, Got %d", min, fields.size())
+                    : String.format("Expected %d To %d Fields, Got %d", min, max, fields.size()));
+        }
+    }
+
+    // Splits a line into its fields, removing the quotes of quoted fields.
+    private static List<String> split(String text) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        int pos = 0;
+
+        while (true) {
+            field.setLength(0);
+
+            if (pos < text.length() && text.charAt(pos) == '"') {
+                pos++;
+
+                while (true) {
+                    if (pos >= text.length()) {
+                        throw new IllegalArgumentException("Unterminated Quoted Field");
+                    }
+
+                    char c = text.charAt(pos++);
+
+                    if (c != '"') {
+                        field.append(c);
+                    } else if (pos < text.length() && text.charAt(pos) == '"') {
+                        field.append('"');
+                        pos++;
+                    } else {
+                        break;
+                    }
+                }
+
+                if (pos < text.length() && text.charAt(pos) != ',') {
+                    throw new IllegalArgumentException("Unexpected Text After Quoted Field");
+                }
+            } else {
+                int end = text.indexOf(',', pos);
+                field.append(text, pos, end < 0 ? text.length() : end);
+                pos = end < 0 ? text.length() : end;
+            }
+
+            fields.add(field.toString());
+
+            if (pos >= text.length()) {
+                return fields;
+            }
+
+            pos++; // the comma
+        }
+    }
+
+    private static String describe(RuntimeException e) {
+        if (e instanceof NumberFormatException) {
+            return "Invalid Number";
+        }
+
+        return e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+    }
+
+    /**
+     * This class represents a single row that was parsed and validated, and is
+     * ready to be applied.
+     *
+     * @author Ali Rizvi (501039655)
+     * @see BulkImporter
+     */
+    public static class Row {
+        private final Kind kind;
+        private final long line;
+
+        private String name;
+        private String address;
+        private String customerKey;
+        private String customerId;
+        private Product product;
+        private String productOptions;
+        private int variant;
+        private int rating;
+        private long count;
+
+        private Row(Kind kind, long line) {
+            this.kind = kind;
+            this.line = line;
+        }
+
+        /**
+         * Getter for the kind of the row.
+         *
+         * @return The kind of the row.
+         */
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * Getter for the line of the row.
+         *
+         * @return The line number of the row, starting at 1.
+         */
+        public long getLine() {
+            return line;
+        }
+
+        /**
+         * Getter for the name of the customer of a customer row.
+         *
+         * @return The name of the customer.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Getter for the address of the customer of a customer row.
+         *
+         * @return The address of the customer.
+         */
+        public String getAddress() {
+            return address;
+        }
+
+        /**
+         * Getter for the key the orders of the same file refer to the customer of a
+         * customer row by.
+         *
+         * @return The key of the customer, or null if the row has none.
+         */
+        public String getCustomerKey() {
+            return customerKey;
+        }
+
+        /**
+         * Getter for the customer of an order row.
+         *
+         * @return The key of a customer imported earlier in the file, or otherwise
+         *         the customer ID, which has not been validated yet.
+         */
+        public String getCustomerId() {
+            return customerId;
+        }
+
+        /**
+         * Getter for the product of an order or rating row.
+         *
+         * @return The product.
+         */
+        public Product getProduct() {
+            return product;
+        }
+
+        /**
+         * Getter for the product options of an order row.
+         *
+         * @return The product options.
+         */
+        public String getProductOptions() {
+            return productOptions;
+        }
+
+        /**
+         * Getter for the variant the product options of an order row were parsed
+         * into.
+         *
+         * @return The variant of the product.
+         */
+        public int getVariant() {
+            return variant;
+        }
+
+        /**
+         * Getter for the rating of a rating row.
+         *
+         * @return The rating, from {@link RatingHistogram#MIN_RATING} to
+         *         {@link RatingHistogram#MAX_RATING}.
+         */
+        public int getRating() {
+            return rating;
+        }
+
+        /**
+         * Getter for the number of times the rating of a rating row was given.
+         *
+         * @return The number of ratings, at least 1.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Rejects this row.
+         *
+         * @param message What is wrong with the row.
+         * @return The problem with this row.
+         */
+        public Problem reject(String message) {
+            return new Problem(line, message);
+        }
+    }
+
+    /**
+     * This class represents the outcome of an import.
+     *
+     * @author Ali Rizvi (501039655)
+     * @see BulkImporter
+     */
+    public static class Result {
+        private final long rowCount;
+        private final long importedCount;
+        private final List<Problem> problems;
+
+        private Result(long rowCount, long importedCount, List<Problem> problems) {
+            this.rowCount = rowCount;
+            this.importedCount = importedCount;
+            this.problems = Collections.unmodifiableList(problems);
+        }
+
+        /**
+         * Getter for the number of rows in the file, not counting blank lines.
+         *
+         * @return The number of rows in the file.
+         */
+        public long getRowCount() {
+            return rowCount;
+        }
+
+        /**
+         * Getter for the number of rows that were imported.
+         *
+         * @return The number of rows that were imported.
+         */
+        public long getImportedCount() {
+            return importedCount;
+        }
+
+        /**
+         * Getter for the problems with rejected rows.
+         *
+         * @return The problems with rejected rows, in the order of the file.
+         */
+        public List<Problem> getProblems() {
+            return problems;
+        }
+
+        /**
+         * Overrides {@link Object#toString()}. This implementation returns how many
+         * rows were imported and rejected.
+         *
+         * @return A string that contains the number of rows imported and rejected.
+         */
+        @Override
+        public String toString() {
+            return String.format("Imported %d Of %d Rows, Rejected %d", importedCount, rowCount, problems.size());
+        }
+    }
+
+    /**
+     * This class represents a row that was rejected.
+     *
+     * @author Ali Rizvi (501039655)
+     * @see BulkImporter
+     */
+    public static class Problem {
+        private final long line;
+        private final String message;
+
+        private Problem(long line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+
+        /**
+         * Getter for the line of the rejected row.
+         *
+         * @return The line number of the row, starting at 1.
+         */
+        public long getLine() {
+            return line;
+        }
+
+        /**
+         * Getter for why the row was rejected.
+         *
+         * @return A description of why the row was rejected.
+         */
+        public String getMessage() {
+            return message;
+        }
+
+        /**
+         * Overrides {@link Object#toString()}. This implementation returns the line
+         * and the description of the problem.
+         *
+         * @return A string that contains the line and the description of the
+         *         problem.
+         */
+        @Override
+        public String toString() {
+            return String.format("Row On Line %d Rejected: %s", line, message);
+        }
+    }
+
+    // The rows of a batch that are ready to be applied, sorted in the order they
+    // are to be applied in, and the problems with the rows that were rejected.
+    private static class Batch {
+        private final List<Row> rows = new ArrayList<>();
+        private final List<Problem> problems = new ArrayList<>();
+    }
+
+    // Parses and validates a batch of lines, splitting it into tasks of
+    // LINES_PER_TASK lines.
+    private class BatchTask extends RecursiveTask<Batch> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<String> lines;
+        private final long firstLine;
+
+        private BatchTask(List<String> lines, long firstLine) {
+            this.lines = lines;
+            this.firstLine = firstLine;
+        }
+
+        @Override
+        protected Batch compute() {
+            List<ParseTask> parses = new ArrayList<>();
+            for (int i = 0; i < lines.size(); i += LINES_PER_TASK) {
+                parses.add(new ParseTask(lines, firstLine, i, Math.min(lines.size(), i + LINES_PER_TASK)));
+            }
+
+            invokeAll(parses);
+
+            Batch batch = new Batch();
+            for (ParseTask parse : parses) {
+                batch.rows.addAll(parse.rows);
+                batch.problems.addAll(parse.problems);
+            }
+
+            batch.rows.sort(APPLY_ORDER);
+            return batch;
+        }
+    }
+
+    // Parses and validates a range of the lines of a batch.
+    private class ParseTask extends RecursiveTask<Void> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<String> lines;
+        private final long firstLine;
+        private final int start;
+        private final int end;
+
+        private final List<Row> rows = new ArrayList<>();
+        private final List<Problem> problems = new ArrayList<>();
+
+        private ParseTask(List<String> lines, long firstLine, int start, int end) {
+            this.lines = lines;
+            this.firstLine = firstLine;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected Void compute() {
+            for (int i = start; i < end; i++) {
+                String text = lines.get(i);
+
+                if (text.isBlank()) {
+                    continue;
+                }
+
+                try {
+                    rows.add(parse(text, firstLine + i));
+                } catch (RuntimeException e) {
+                    problems.add(new Problem(firstLine + i, describe(e)));
+                }
+            }
+
+            return null;
+        }
+    }
+}
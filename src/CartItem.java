@@ -2,7 +2,7 @@
  * This class represents an item stored within a customers cart found in the
  * ECommerceSystem. Cart items are associated with a specific product. They
  * contain a reference to the product, as well as any options associated with
- * it.
+ * it, both as specified and parsed into a variant of the product.
  *
  * @author Ali Rizvi (501039655)
  * @see ECommerceSystem
@@ -12,16 +12,32 @@
 public class CartItem {
     private final Product product;
     private final String options;
+    private final int variant;
 
     /**
-     * Constructs a new cart item with the given product and options.
+     * Constructs a new cart item with the given product and options. The options
+     * are parsed into a variant of the product.
      *
      * @param product The product associated with the cart item.
      * @param options The options associated with the cart item.
      */
     public CartItem(Product product, String options) {
+        this(product, options, product.parseOptions(options));
+    }
+
+    /**
+     * Constructs a new cart item with the given product, options, and the variant
+     * the options were already parsed into.
+     *
+     * @param product The product associated with the cart item.
+     * @param options The options associated with the cart item.
+     * @param variant The variant of the product, as parsed by
+     *                {@link Product#parseOptions(String)}.
+     */
+    public CartItem(Product product, String options, int variant) {
         this.product = product;
         this.options = options;
+        this.variant = variant;
     }
 
     /**
@@ -41,4 +57,14 @@ public class CartItem {
     public String getOptions() {
         return options;
     }
+
+    /**
+     * Getter for the variant of the product associated with the cart item.
+     *
+     * @return The variant of the product, as parsed by
+     *         {@link Product#parseOptions(String)}.
+     */
+    public int getVariant() {
+        return variant;
+    }
 }
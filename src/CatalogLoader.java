@@ -0,0 +1,431 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * This class loads the products of the ECommerceSystem from a catalog file in
+ * parallel. The file is memory-mapped, split into chunks at line boundaries,
+ * and the chunks are parsed on a fork/join pool.
+ *
+ * The catalog file stores every product as a record of five lines: the
+ * category, the name, the price, the stock, and, for books, the title, author,
+ * and year separated by colons. The stock of a book is its paperback and
+ * hardcover stock separated by a space. Lines may end in either LF or CRLF, and
+ * the last line does not need a line ending.
+ *
+ * Loading takes two passes over the file. The first pass counts the lines of
+ * each chunk in parallel, which tells every chunk the index of its first line,
+ * and so where its first record starts. The second pass parses the records
+ * that start in each chunk in parallel. Each product is given the ID of its
+ * record index added to the first product ID, so IDs do not depend on how the
+ * file was split, and products are returned in the order of the file.
+ *
+ * A malformed record does not stop the load. It is skipped, its ID is left
+ * unused, and it is reported as a {@link Problem}.
+ *
+ * @author Ali Rizvi (501039655)
+ * @see ECommerceSystem
+ * @see ProductCatalog
+ */
+public class CatalogLoader {
+    /**
+     * The number of lines of every record.
+     */
+    public static final int LINES_PER_RECORD = 5;
+
+    private static final int MIN_CHUNK_SIZE = 1 << 20;
+    private static final int MAX_CHUNK_SIZE = 1 << 30; // a chunk and its last record must fit in one buffer
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private final int firstProductId;
+    private final ForkJoinPool pool;
+
+    /**
+     * Constructs a new loader that parses on the common fork/join pool.
+     *
+     * @param firstProductId The ID of the product of the first record.
+     */
+    public CatalogLoader(int firstProductId) {
+        this(firstProductId, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructs a new loader that parses on a specific fork/join pool.
+     *
+     * @param firstProductId The ID of the product of the first record.
+     * @param pool           The pool to parse on.
+     */
+    public CatalogLoader(int firstProductId, ForkJoinPool pool) {
+        this.firstProductId = firstProductId;
+        this.pool = pool;
+    }
+
+    /**
+     * Loads every product of a catalog file.
+     *
+     * @param file The catalog file.
+     * @return The products that were loaded, in the order of the file, and the
+     *         problems with any malformed records.
+     *
+     * @throws IOException If the file could not be read.
+     */
+    public Result load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long[] bounds = split(channel, size);
+            int chunks = bounds.length - 1;
+
+            List<CountTask> counts = new ArrayList<>(chunks);
+            for (int i = 0; i < chunks; i++) {
+                counts.add(new CountTask(channel, bounds[i], bounds[i + 1]));
+            }
+            pool.invoke(new InvokeAll<>(counts));
+
+            // every chunk starts right after a line ending, so the lines before it
+            // are the line endings of the chunks before it
+            List<ParseTask> parses = new ArrayList<>(chunks);
+            long line = 0;
+            for (int i = 0; i < chunks; i++) {
+                parses.add(new ParseTask(channel, size, bounds[i], bounds[i + 1], line));
+                line += counts.get(i).join();
+            }
+
+            if (size > 0 && lastByte(channel, size) != '\n') {
+                line++; // the last line has no line ending
+            }
+
+            pool.invoke(new InvokeAll<>(parses));
+
+            List<Product> products = new ArrayList<>();
+            List<Problem> problems = new ArrayList<>();
+            for (ParseTask parse : parses) {
+                products.addAll(parse.products);
+                problems.addAll(parse.problems);
+            }
+
+            return new Result(products, problems, (line + LINES_PER_RECORD - 1) / LINES_PER_RECORD);
+        }
+    }
+
+    // Splits the file into chunks of roughly equal size, moving every boundary to
+    // the start of the next line.
+    private long[] split(FileChannel channel, long size) throws IOException {
+        int parallelism = pool.getParallelism() * CHUNKS_PER_THREAD;
+        int chunks = (int) Math.max(size / MAX_CHUNK_SIZE + 1, Math.min(parallelism, size / MIN_CHUNK_SIZE));
+
+        long[] bounds = new long[chunks + 1];
+        bounds[chunks] = size;
+
+        for (int i = 1; i < chunks; i++) {
+            long bound = Math.max(bounds[i - 1], size / chunks * i);
+            MappedByteBuffer buffer = map(channel, bound, size);
+
+            int pos = 0;
+            while (pos < buffer.limit() && buffer.get(pos) != '\n') {
+                pos++;
+            }
+
+            bounds[i] = Math.min(size, bound + pos + 1);
+        }
+
+        return bounds;
+    }
+
+    private Product parse(String[] lines, String id) {
+        Product.Category category = Product.Category.valueOf(lines[0]);
+        String name = lines[1];
+        double price = Double.parseDouble(lines[2]);
+
+        if (category == Product.Category.BOOKS) {
+            String[] stock = lines[3].split(" ");
+
+            int paperbackStock = Integer.parseInt(stock[0]);
+            int hardcoverStock = Integer.parseInt(stock[1]);
+
+            String[] info = lines[4].split(":");
+
+            String title = info[0];
+            String author = info[1];
+            int year = Integer.parseInt(info[2]);
+
+            return new Book(name, id, price, paperbackStock, hardcoverStock, title, author, year);
+        }
+
+        return new Product(name, id, price, Integer.parseInt(lines[3]), category);
+    }
+
+    private static byte lastByte(FileChannel channel, long size) throws IOException {
+        return map(channel, size - 1, size).get(0);
+    }
+
+    // Maps the file from a position up to its end, or as far as a single buffer
+    // can reach. Mapping is lazy, so only the pages that are read cost anything.
+    private static MappedByteBuffer map(FileChannel channel, long from, long size) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, from, Math.min(size - from, Integer.MAX_VALUE));
+    }
+
+    /**
+     * This class represents the outcome of loading a catalog file.
+     *
+     * @author Ali Rizvi (501039655)
+     * @see CatalogLoader
+     */
+    public static class Result {
+        private final List<Product> products;
+        private final List<Problem> problems;
+        private final long recordCount;
+
+        private Result(List<Product> products, List<Problem> problems, long recordCount) {
+            this.products = Collections.unmodifiableList(products);
+            this.problems = Collections.unmodifiableList(problems);
+            this.recordCount = recordCount;
+        }
+
+        /**
+         * Getter for the products that were loaded.
+         *
+         * @return The products that were loaded, in the order of the file.
+         */
+        public List<Product> getProducts() {
+            return products;
+        }
+
+        /**
+         * Getter for the problems with malformed records.
+         *
+         * @return The problems with malformed records, in the order of the file.
+         */
+        public List<Problem> getProblems() {
+            return problems;
+        }
+
+        /**
+         * Getter for the number of records in the file, including malformed ones.
+         * The product IDs of the file are the first product ID up to, but not
+         * including, the first product ID plus this count.
+         *
+         * @return The number of records in the file.
+         */
+        public long getRecordCount() {
+            return recordCount;
+        }
+    }
+
+    /**
+     * This class represents a malformed record that was skipped.
+     *
+     * @author Ali Rizvi (501039655)
+     * @see CatalogLoader
+     */
+    public static class Problem {
+        private final long line;
+        private final String message;
+
+        private Problem(long line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+
+        /**
+         * Getter for the line the malformed record starts on.
+         *
+         * @return The line number of the first line of the record, starting at 1.
+         */
+        public long getLine() {
+            return line;
+        }
+
+        /**
+         * Getter for what is wrong with the record.
+         *
+         * @return A description of what is wrong with the record.
+         */
+        public String getMessage() {
+            return message;
+        }
+
+        /**
+         * Overrides {@link Object#toString()}. This implementation returns the line
+         * and the description of the problem.
+         *
+         * @return A string that contains the line and the description of the
+         *         problem.
+         */
+        @Override
+        public String toString() {
+            return String.format("Record On Line %d Malformed: %s", line, message);
+        }
+    }
+
+    // Invokes every task of a list, and waits for all of them.
+    private static class InvokeAll<T extends ForkJoinTask<?>> extends RecursiveTask<Void> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<T> tasks;
+
+        private InvokeAll(List<T> tasks) {
+            this.tasks = tasks;
+        }
+
+        @Override
+        protected Void compute() {
+            invokeAll(tasks);
+            return null;
+        }
+    }
+
+    // Counts the line endings of a chunk.
+    private static class CountTask extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+
+        private CountTask(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected Long compute() {
+            try {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                long count = 0;
+
+                for (int i = 0; i < buffer.limit(); i++) {
+                    if (buffer.get(i) == '\n') {
+                        count++;
+                    }
+                }
+
+                return count;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    // Parses every record that starts in a chunk. The last of them may end in
+    // the next chunk.
+    private class ParseTask extends RecursiveTask<Void> {
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+        private final long size;
+        private final long start;
+        private final long end;
+        private final long firstLine;
+
+        private final List<Product> products = new ArrayList<>();
+        private final List<Problem> problems = new ArrayList<>();
+
+        private ParseTask(FileChannel channel, long size, long start, long end, long firstLine) {
+            this.channel = channel;
+            this.size = size;
+            this.start = start;
+            this.end = end;
+            this.firstLine = firstLine;
+        }
+
+        @Override
+        protected Void compute() {
+            if (start == end) {
+                return null;
+            }
+
+            try {
+                MappedByteBuffer buffer = map(channel, start, size);
+                byte[] bytes = new byte[256];
+                String[] lines = new String[LINES_PER_RECORD];
+
+                int pos = 0;
+                long line = firstLine;
+
+                // skip the end of a record that started in an earlier chunk
+                while (line % LINES_PER_RECORD != 0 && pos < end - start) {
+                    pos = nextLine(buffer, pos);
+                    line++;
+                }
+
+                while (pos < end - start) {
+                    long recordLine = line + 1;
+                    int count = 0;
+
+                    for (; count < LINES_PER_RECORD && pos < buffer.limit(); count++, line++) {
+                        int next = nextLine(buffer, pos);
+                        int length = lineLength(buffer, pos, next);
+
+                        if (bytes.length < length) {
+                            bytes = new byte[Math.max(length, bytes.length * 2)];
+                        }
+
+                        buffer.get(pos, bytes, 0, length);
+                        lines[count] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+                        pos = next;
+                    }
+
+                    if (count < LINES_PER_RECORD) {
+                        problems.add(new Problem(recordLine,
+                                String.format("Expected %d Lines, Got %d", LINES_PER_RECORD, count)));
+                        break;
+                    }
+
+                    String id = Long.toString(firstProductId + (recordLine - 1) / LINES_PER_RECORD);
+                    try {
+                        products.add(parse(lines, id));
+                    } catch (RuntimeException e) {
+                        problems.add(new Problem(recordLine, describe(e)));
+                    }
+                }
+
+                return null;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        // Finds the start of the line after the line at a position.
+        private int nextLine(MappedByteBuffer buffer, int pos) {
+            while (pos < buffer.limit() && buffer.get(pos) != '\n') {
+                pos++;
+            }
+
+            return Math.min(pos + 1, buffer.limit());
+        }
+
+        // Finds the length of a line without its line ending.
+        private int lineLength(MappedByteBuffer buffer, int pos, int next) {
+            int length = next - pos;
+
+            if (length > 0 && buffer.get(next - 1) == '\n') {
+                length--;
+            }
+
+            if (length > 0 && buffer.get(pos + length - 1) == '\r') {
+                length--;
+            }
+
+            return length;
+        }
+
+        private String describe(RuntimeException e) {
+            if (e instanceof ArrayIndexOutOfBoundsException) {
+                return "Missing Field";
+            }
+
+            return e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+        }
+    }
+}
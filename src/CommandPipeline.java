@@ -0,0 +1,351 @@
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * This class represents an optional engine mode of the ECommerceSystem, where
+ * mutating commands are not applied by the threads that issue them, but by a
+ * single writer thread that owns the system. Commands are published to a
+ * bounded ring buffer, and each caller receives a future that completes with
+ * the result of its command, or with the exception it threw.
+ *
+ * Publishing a command claims a slot with a single atomic increment, so
+ * callers never take a lock. The writer applies every command published since
+ * its last pass as one batch, in the order the slots were claimed, so the
+ * order in which commands are applied is well defined. Each batch is run as a
+ * batch of the system, see {@link ECommerceSystem#beginBatch()}: the journal
+ * is forced once for the whole batch before any of its commands take effect,
+ * and only then are the futures of the batch completed. If the journal could
+ * not be forced, no command of the batch takes effect, and every future of the
+ * batch fails.
+ *
+ * When the ring buffer is full, callers wait until the writer frees a slot.
+ * When there is nothing to apply, the writer spins briefly and then parks, and
+ * the next caller to publish a command wakes it up.
+ *
+ * @author Ali Rizvi (501039655)
+ * @see ECommerceSystem
+ */
+public class CommandPipeline implements AutoCloseable {
+    /**
+     * The number of slots of the ring buffer when no capacity is given.
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private static final int SPINS_BEFORE_PARKING = 100;
+    private static final long PARK_NANOS = 50_000;
+
+    private final ECommerceSystem system;
+
+    private final Entry<?>[] slots;
+    private final AtomicLongArray published; // the sequence last published to each slot
+    private final int mask;
+
+    private final AtomicLong claimed = new AtomicLong(); // the next sequence to claim
+    private volatile long consumed; // every sequence below has been applied and its slot freed
+
+    private final Thread writer;
+    private volatile boolean sleeping; // the writer is parked until the next command is published
+    private volatile boolean closed;
+    private volatile boolean terminated;
+
+    /**
+     * Constructs and starts a new pipeline for a system, with the
+     * {@link #DEFAULT_CAPACITY}.
+     *
+     * @param system The system the commands are applied to.
+     */
+    public CommandPipeline(ECommerceSystem system) {
+        this(system, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs and starts a new pipeline for a system. The capacity is rounded
+     * up to the next power of two.
+     *
+     * @param system   The system the commands are applied to.
+     * @param capacity The minimum number of slots of the ring buffer.
+     */
+    public CommandPipeline(ECommerceSystem system, int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+
+        this.system = system;
+        this.slots = new Entry<?>[size];
+        this.published = new AtomicLongArray(size);
+        this.mask = size - 1;
+
+        for (int i = 0; i < size; i++) {
+            published.set(i, -1); // nothing published yet, not even sequence 0
+        }
+
+        this.writer = new Thread(this::run, "command-pipeline");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Publishes a command to be applied by the writer thread.
+     *
+     * @param <T>     The type of the result of the command.
+     * @param command The command, which receives the system.
+     * @return A future that completes with the result of the command, or with the
+     *         exception it threw.
+     *
+     * @throws IllegalStateException If the pipeline is closed.
+     */
+    public <T> CompletableFuture<T> submit(Function<ECommerceSystem, T> command) {
+        if (closed) {
+            throw new IllegalStateException("Pipeline Closed");
+        }
+
+        Entry<T> entry = new Entry<>(command);
+        publish(entry);
+
+        if (terminated) {
+            // the writer may have stopped before it saw this command
+            entry.future.completeExceptionally(new IllegalStateException("Pipeline Closed"));
+        }
+
+        return entry.future;
+    }
+
+    /**
+     * Publishes an order, see
+     * {@link ECommerceSystem#orderProduct(String, String, String)}.
+     *
+     * @param productId      The product ID of the product to be ordered.
+     * @param customerId     The customer ID of the customer ordering the product.
+     * @param productOptions The product options to be used when ordering.
+     * @return A future that completes with the order number of the order.
+     */
+    public CompletableFuture<String> orderProduct(String productId, String customerId, String productOptions) {
+        return submit(s -> s.orderProduct(productId, customerId, productOptions));
+    }
+
+    /**
+     * Publishes a cancellation, see {@link ECommerceSystem#cancelOrder(String)}.
+     *
+     * @param orderNumber The order number of the order to be cancelled.
+     * @return A future that completes once the order is cancelled.
+     */
+    public CompletableFuture<Void> cancelOrder(String orderNumber) {
+        return submit(s -> {
+            s.cancelOrder(orderNumber);
+            return null;
+        });
+    }
+
+    /**
+     * Publishes a shipment, see {@link ECommerceSystem#shipOrder(String)}.
+     *
+     * @param orderNumber The order number of the order to be shipped.
+     * @return A future that completes with the shipped order.
+     */
+    public CompletableFuture<ProductOrder> shipOrder(String orderNumber) {
+        return submit(s -> s.shipOrder(orderNumber));
+    }
+
+    /**
+     * Publishes an item being added to a cart, see
+     * {@link ECommerceSystem#addToCart(String, String, String)}.
+     *
+     * @param productId      The product ID of the item to be added.
+     * @param customerId     The customer ID of the customer who is adding the item.
+     * @param productOptions The product options to be used when adding the item.
+     * @return A future that completes once the item is added.
+     */
+    public CompletableFuture<Void> addToCart(String productId, String customerId, String productOptions) {
+        return submit(s -> {
+            s.addToCart(productId, customerId, productOptions);
+            return null;
+        });
+    }
+
+    /**
+     * Publishes a checkout of a cart, see
+     * {@link ECommerceSystem#orderItems(String)}.
+     *
+     * @param customerId The customer ID of the customer who's cart is ordered.
+     * @return A future that completes with the order numbers of the orders placed.
+     */
+    public CompletableFuture<List<String>> orderItems(String customerId) {
+        return submit(s -> s.orderItems(customerId));
+    }
+
+    /**
+     * Publishes a rating, see {@link ECommerceSystem#addRating(String, int)}.
+     *
+     * @param productId The product ID of the product being rated.
+     * @param rating    The rating to be added.
+     * @return A future that completes once the rating is added.
+     */
+    public CompletableFuture<Void> addRating(String productId, int rating) {
+        return submit(s -> {
+            s.addRating(productId, rating);
+            return null;
+        });
+    }
+
+    /**
+     * Stops accepting commands, and waits until every command published so far
+     * has been applied and the writer thread has stopped. A command that was
+     * still being published when the pipeline closed is not applied, and its
+     * future fails with an {@link IllegalStateException}.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        publish(new Entry<>(null)); // a command without a body stops the writer
+
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void publish(Entry<?> entry) {
+        long sequence = claimed.getAndIncrement();
+
+        for (int spins = 0; sequence - slots.length >= consumed; spins++) {
+            idle(spins); // the ring buffer is full, wait for the writer to free the slot
+        }
+
+        slots[(int) sequence & mask] = entry;
+        published.set((int) sequence & mask, sequence); // the volatile write publishes the entry
+
+        if (sleeping) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    private void run() {
+        long next = 0;
+        boolean stopping = false;
+
+        for (int spins = 0; !stopping; spins++) {
+            long end = next;
+            while (end - next < slots.length && published.get((int) end & mask) == end) {
+                end++;
+            }
+
+            if (end == next) {
+                if (spins < SPINS_BEFORE_PARKING) {
+                    Thread.onSpinWait();
+                } else {
+                    sleep(next);
+                }
+                continue;
+            }
+
+            system.beginBatch();
+
+            for (long sequence = next; sequence < end; sequence++) {
+                Entry<?> entry = slots[(int) sequence & mask];
+
+                if (stopping) {
+                    entry.error = new IllegalStateException("Pipeline Closed"); // published after the stop
+                } else {
+                    stopping = entry.apply(system);
+                }
+            }
+
+            try {
+                system.commitBatch();
+            } catch (RuntimeException e) {
+                for (long sequence = next; sequence < end; sequence++) {
+                    if (slots[(int) sequence & mask].error == null) {
+                        slots[(int) sequence & mask].error = e; // the command was undone, not applied
+                    }
+                }
+            }
+
+            for (long sequence = next; sequence < end; sequence++) {
+                slots[(int) sequence & mask].complete();
+                slots[(int) sequence & mask] = null;
+            }
+
+            consumed = next = end;
+            spins = 0;
+        }
+
+        terminated = true;
+
+        // fail anything that was published after the pipeline was closed
+        while (next < claimed.get()) {
+            while (published.get((int) next & mask) != next) {
+                Thread.onSpinWait();
+            }
+
+            slots[(int) next & mask].error = new IllegalStateException("Pipeline Closed");
+            slots[(int) next & mask].complete();
+            slots[(int) next & mask] = null;
+            consumed = ++next;
+        }
+    }
+
+    // Parks the writer until a command is published to a sequence. The flag is
+    // raised before the sequence is checked, and publishers check the flag after
+    // publishing, so either the writer sees the command or its publisher wakes
+    // the writer up.
+    private void sleep(long sequence) {
+        sleeping = true;
+
+        if (published.get((int) sequence & mask) != sequence) {
+            LockSupport.park(this);
+        }
+
+        sleeping = false;
+    }
+
+    private static void idle(int spins) {
+        if (spins < SPINS_BEFORE_PARKING) {
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+
+    // A published command, together with the outcome the writer records for it.
+    private static class Entry<T> {
+        private final Function<ECommerceSystem, T> command;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        private T result;
+        private RuntimeException error;
+
+        private Entry(Function<ECommerceSystem, T> command) {
+            this.command = command;
+        }
+
+        // Applies the command, and returns true if it asks the writer to stop.
+        private boolean apply(ECommerceSystem system) {
+            if (command == null) {
+                return true;
+            }
+
+            try {
+                result = command.apply(system);
+            } catch (RuntimeException e) {
+                error = e;
+            }
+
+            return false;
+        }
+
+        private void complete() {
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else {
+                future.complete(result);
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class represents the registry of every customer known to the
+ * ECommerceSystem. Customers are indexed by their unique identifier in a hash
+ * map so that lookups by ID take constant time, regardless of how many
+ * customers are registered.
+ *
+ * Alongside the index, the registry keeps the customers in a list that
+ * preserves their listing order. This list starts out in registration order
+ * and can be re-ordered by name, which is what the system uses when printing
+ * customers.
+ *
+ * The registry is thread-safe. Lookups by ID never block, while changes to the
+ * listing order are serialized.
+ *
+ * @author Ali Rizvi (501039655)
+ * @see ECommerceSystem
+ * @see Customer
+ */
+public class CustomerRegistry implements Iterable<Customer> {
+    private final Map<String, Customer> customersById = new ConcurrentHashMap<>();
+    private final List<Customer> customers = new ArrayList<>();
+
+    /**
+     * Registers a new customer. The customer is indexed by their unique identifier
+     * and appended to the end of the listing order.
+     *
+     * @param customer The customer to register.
+     *
+     * @throws IllegalArgumentException If a customer with the same unique
+     *                                  identifier is already registered.
+     */
+    public void add(Customer customer) {
+        synchronized (customers) {
+            if (customersById.putIfAbsent(customer.getId(), customer) != null) {
+                throw new IllegalArgumentException(String.format("Customer %s Already Exists", customer.getId()));
+            }
+
+            customers.add(customer);
+        }
+    }
+
+    /**
+     * Finds a customer based on their unique identifier.
+     *
+     * @param customerId The unique identifier of the customer.
+     * @return The customer with the given unique identifier, or null if no such
+     *         customer is registered.
+     */
+    public Customer get(String customerId) {
+        return customersById.get(customerId);
+    }
+
+    /**
+     * Validates if a customer with the given unique identifier is registered.
+     *
+     * @param customerId The unique identifier of the customer.
+     * @return True if a customer with the given unique identifier is registered.
+     */
+    public boolean contains(String customerId) {
+        return customersById.containsKey(customerId);
+    }
+
+    /**
+     * Getter for the number of registered customers.
+     *
+     * @return The number of registered customers.
+     */
+    public int size() {
+        return customersById.size();
+    }
+
+    /**
+     * Sorts the listing order of the customers by their name, in alphabetical
+     * order. This does not affect lookups by unique identifier.
+     */
+    public void sortByName() {
+        synchronized (customers) {
+            Collections.sort(customers);
+        }
+    }
+
+    /**
+     * Overrides {@link Iterable#iterator()}. This implementation iterates over a
+     * copy of the customers in their current listing order, so it is not affected
+     * by later changes. The iterator does not support removal.
+     *
+     * @return An iterator over the customers in their listing order.
+     */
+    @Override
+    public Iterator<Customer> iterator() {
+        synchronized (customers) {
+            return Collections.unmodifiableList(new ArrayList<>(customers)).iterator();
+        }
+    }
+}
@@ -0,0 +1,591 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * This class represents an HTTP front-end of our ECommerceSystem, built on the
+ * HTTP server of the JDK. It exposes the operations of the system as endpoints
+ * that take their parameters from the query string or from a form encoded
+ * request body, and respond with JSON.
+ *
+ * <pre>
+ * GET  /products           [id]
+ * GET  /customers
+ * POST /customers          name, address
+ * GET  /orders             customerId, [status=active|shipped], [cursor], [limit]
+ * POST /orders             productId, customerId, [options]
+ * POST /orders/ship        orderNumber
+ * POST /orders/cancel      orderNumber
+ * GET  /cart               customerId
+ * POST /cart               productId, customerId, [options]
+ * POST /cart/remove        productId, customerId
+ * POST /cart/checkout      customerId
+ * GET  /ratings            productId
+ * POST /ratings            productId, rating
+ * GET  /stats              [limit]
+ * </pre>
+ *
+ * Each request runs on its own virtual thread when the JDK supports them, and
+ * on a pool of platform threads otherwise. The number of requests handled at
+ * once is bounded, and requests beyond the bound are rejected with 503 Service
+ * Unavailable so a load balancer can retry them elsewhere. Every response has
+ * a known length, so connections are kept alive between requests.
+ *
+ * Optionally, mutating requests are applied by the single writer of a
+ * {@link CommandPipeline}, and the request thread waits for their completion.
+ *
+ * @author Ali Rizvi (501039655)
+ * @see ECommerceSystem
+ */
+public class ECommerceHttpServer {
+    /**
+     * The number of requests handled at once when no bound is given.
+     */
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 256;
+
+    private static final int DEFAULT_PAGE_SIZE = 100;
+
+    private final ECommerceSystem system;
+    private final CommandPipeline pipeline;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Semaphore permits;
+
+    // Routes are only added by the constructor, so they are safe to read from any
+    // request thread once the server has started.
+    private final Map<String, Map<String, Endpoint>> routes = new HashMap<>();
+
+    /**
+     * Constructs a new server for a system. The server does not accept requests
+     * until it is started.
+     *
+     * @param system                The system to expose.
+     * @param address               The address to listen on. Port 0 picks any
+     *                              free port, see {@link #getPort()}.
+     * @param maxConcurrentRequests The maximum number of requests handled at once.
+     *
+     * @throws IOException If the server could not bind to the address.
+     */
+    public ECommerceHttpServer(ECommerceSystem system, InetSocketAddress address, int maxConcurrentRequests)
+            throws IOException {
+        this(system, null, address, maxConcurrentRequests);
+    }
+
+    /**
+     * Constructs a new server for a system that applies every mutating request
+     * through a command pipeline, instead of on the request thread. The server
+     * does not accept requests until it is started.
+     *
+     * @param system                The system to expose.
+     * @param pipeline              The pipeline to apply mutating requests
+     *                              through, or null to apply them on the request
+     *                              thread.
+     * @param address               The address to listen on. Port 0 picks any
+     *                              free port, see {@link #getPort()}.
+     * @param maxConcurrentRequests The maximum number of requests handled at once.
+     *
+     * @throws IOException If the server could not bind to the address.
+     */
+    public ECommerceHttpServer(ECommerceSystem system, CommandPipeline pipeline, InetSocketAddress address,
+            int maxConcurrentRequests) throws IOException {
+        if (maxConcurrentRequests <= 0) {
+            throw new IllegalArgumentException(
+                    String.format("Max Concurrent Requests %d Must Be Positive", maxConcurrentRequests));
+        }
+
+        this.system = system;
+        this.pipeline = pipeline;
+        this.server = HttpServer.create(address, 0);
+        this.executor = newRequestExecutor();
+        this.permits = new Semaphore(maxConcurrentRequests);
+
+        server.setExecutor(executor);
+
+        route("GET", "/products", this::getProducts);
+        route("GET", "/customers", this::getCustomers);
+        route("POST", "/customers", this::createCustomer);
+        route("GET", "/orders", this::getOrders);
+        route("POST", "/orders", this::orderProduct);
+        route("POST", "/orders/ship", this::shipOrder);
+        route("POST", "/orders/cancel", this::cancelOrder);
+        route("GET", "/cart", this::getCart);
+        route("POST", "/cart", this::addToCart);
+        route("POST", "/cart/remove", this::removeFromCart);
+        route("POST", "/cart/checkout", this::orderItems);
+        route("GET", "/ratings", this::getRatings);
+        route("POST", "/ratings", this::addRating);
+        route("GET", "/stats", this::getStats);
+    }
+
+    /**
+     * Starts accepting requests.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops accepting requests, waits for requests being handled to finish, and
+     * then stops the request threads.
+     *
+     * @param delaySeconds The maximum number of seconds to wait for requests being
+     *                     handled to finish.
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+    }
+
+    /**
+     * Getter for the port the server listens on.
+     *
+     * @return The port the server listens on.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Starts a server on the loopback address.
+     *
+     * @param args The port to listen on (default 8080), the maximum number of
+     *             requests handled at once, a directory to persist the state of
+     *             the system to, "pipeline" to apply mutating requests through a
+     *             {@link CommandPipeline}, and the {@link Journal.Durability} of
+     *             the journal, all optional. The journal defaults to SYNC, or to
+     *             DEFERRED with a pipeline, which forces the journal once per
+     *             batch before applying and acknowledging it.
+     *
+     * @throws IOException If the server could not bind to the port.
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        int maxConcurrentRequests = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_MAX_CONCURRENT_REQUESTS;
+        boolean pipelined = args.length > 3 && args[3].equalsIgnoreCase("pipeline");
+        Journal.Durability durability = args.length > 4 ? Journal.Durability.valueOf(args[4].toUpperCase())
+                : pipelined ? Journal.Durability.DEFERRED : Journal.Durability.SYNC;
+
+        ECommerceSystem system = args.length > 2 ? new ECommerceSystem(Paths.get(args[2]), durability)
+                : new ECommerceSystem();
+
+        CommandPipeline pipeline = pipelined ? new CommandPipeline(system) : null;
+
+        ECommerceHttpServer server = new ECommerceHttpServer(system, pipeline,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), port), maxConcurrentRequests);
+        server.start();
+
+        System.out.println("Listening on port " + server.getPort());
+    }
+
+    private String getProducts(Map<String, String> params) {
+        String productId = params.get("id");
+        if (productId != null) {
+            return product(new StringBuilder(), system.getProduct(productId)).toString();
+        }
+
+        StringBuilder json = new StringBuilder("[");
+        for (Product p : system.getAllProducts()) {
+            product(json.length() > 1 ? json.append(',') : json, p);
+        }
+
+        return json.append(']').toString();
+    }
+
+    private String getCustomers(Map<String, String> params) {
+        StringBuilder json = new StringBuilder("[");
+        for (Customer c : system.getCustomers()) {
+            customer(json.length() > 1 ? json.append(',') : json, c);
+        }
+
+        return json.append(']').toString();
+    }
+
+    private String createCustomer(Map<String, String> params) {
+        String customerId = apply(s -> s.createCustomer(params.get("name"), params.get("address")));
+
+        return field(new StringBuilder("{"), "id", customerId).append('}').toString();
+    }
+
+    private String getOrders(Map<String, String> params) {
+        String customerId = required(params, "customerId");
+        String status = params.getOrDefault("status", "active");
+        String cursor = params.get("cursor");
+        int limit = intParam(params, "limit", DEFAULT_PAGE_SIZE);
+
+        List<ProductOrder> page;
+        if (status.equalsIgnoreCase("active")) {
+            page = system.getActiveOrders(customerId, cursor, limit);
+        } else if (status.equalsIgnoreCase("shipped")) {
+            page = system.getShippedOrders(customerId, cursor, limit);
+        } else {
+            throw new IllegalArgumentException(String.format("Invalid Status: %s", status));
+        }
+
+        StringBuilder json = new StringBuilder("[");
+        for (ProductOrder order : page) {
+            order(json.length() > 1 ? json.append(',') : json, order);
+        }
+
+        return json.append(']').toString();
+    }
+
+    private String orderProduct(Map<String, String> params) {
+        String productId = required(params, "productId");
+        String customerId = required(params, "customerId");
+        String orderNumber = apply(s -> s.orderProduct(productId, customerId, params.getOrDefault("options", "")));
+
+        return field(new StringBuilder("{"), "orderNumber", orderNumber).append('}').toString();
+    }
+
+    private String shipOrder(Map<String, String> params) {
+        String orderNumber = required(params, "orderNumber");
+
+        return order(new StringBuilder(), apply(s -> s.shipOrder(orderNumber))).toString();
+    }
+
+    private String cancelOrder(Map<String, String> params) {
+        String orderNumber = required(params, "orderNumber");
+        apply(s -> {
+            s.cancelOrder(orderNumber);
+            return null;
+        });
+
+        return field(new StringBuilder("{"), "orderNumber", orderNumber).append('}').toString();
+    }
+
+    private String getCart(Map<String, String> params) {
+        StringBuilder json = new StringBuilder("[");
+        for (CartItem item : system.getCart(required(params, "customerId"))) {
+            json.append(json.length() > 1 ? ",{" : "{");
+            field(json, "productId", item.getProduct().getId()).append(',');
+            field(json, "productName", item.getProduct().getName()).append(',');
+            field(json, "options", item.getOptions()).append('}');
+        }
+
+        return json.append(']').toString();
+    }
+
+    private String addToCart(Map<String, String> params) {
+        String productId = required(params, "productId");
+        String customerId = required(params, "customerId");
+
+        apply(s -> {
+            s.addToCart(productId, customerId, params.getOrDefault("options", ""));
+            return null;
+        });
+
+        return getCart(params);
+    }
+
+    private String removeFromCart(Map<String, String> params) {
+        String productId = required(params, "productId");
+        String customerId = required(params, "customerId");
+
+        apply(s -> {
+            s.removeFromCart(productId, customerId);
+            return null;
+        });
+
+        return getCart(params);
+    }
+
+    private String orderItems(Map<String, String> params) {
+        StringBuilder json = new StringBuilder("{\"orderNumbers\":[");
+        int start = json.length();
+
+        String customerId = required(params, "customerId");
+
+        for (String orderNumber : apply(s -> s.orderItems(customerId))) {
+            quote(json.length() > start ? json.append(',') : json, orderNumber);
+        }
+
+        return json.append("]}").toString();
+    }
+
+    private String getRatings(Map<String, String> params) {
+        long[] counts = system.getRatingCounts(required(params, "productId"));
+        StringBuilder json = new StringBuilder("{");
+
+        for (int i = 0; i < counts.length; i++) {
+            json.append(i > 0 ? ",\"" : "\"").append(i + RatingHistogram.MIN_RATING).append("\":").append(counts[i]);
+        }
+
+        return json.append('}').toString();
+    }
+
+    private String addRating(Map<String, String> params) {
+        String productId = required(params, "productId");
+        int rating = intParam(params, "rating", 0);
+
+        apply(s -> {
+            s.addRating(productId, rating);
+            return null;
+        });
+
+        return getRatings(params);
+    }
+
+    private String getStats(Map<String, String> params) {
+        StringBuilder json = new StringBuilder("[");
+
+        for (SalesRanking.Sales sales : system.getTopSales(intParam(params, "limit", DEFAULT_PAGE_SIZE))) {
+            json.append(json.length() > 1 ? ",{" : "{");
+            field(json, "productId", sales.getProductId()).append(',');
+            field(json, "productName", system.getProduct(sales.getProductId()).getName()).append(',');
+            json.append("\"count\":").append(sales.getCount()).append('}');
+        }
+
+        return json.append(']').toString();
+    }
+
+    // Applies a mutating request, through the pipeline if there is one.
+    private <T> T apply(Function<ECommerceSystem, T> command) {
+        if (pipeline == null) {
+            return command.apply(system);
+        }
+
+        try {
+            return pipeline.submit(command).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause(); // rethrown as is, so it maps to the same status
+            }
+
+            throw e;
+        }
+    }
+
+    private void route(String method, String path, Endpoint endpoint) {
+        routes.computeIfAbsent(path, p -> {
+            server.createContext(p, this::handle);
+            return new HashMap<>();
+        }).put(method, endpoint);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        if (!permits.tryAcquire()) {
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            send(exchange, 503, error("Server Busy"));
+            return;
+        }
+
+        try {
+            // contexts match by prefix, so /orders would also receive /orders/unknown
+            String path = exchange.getRequestURI().getPath();
+            if (!path.equals(exchange.getHttpContext().getPath())) {
+                send(exchange, 404, error(String.format("Path %s Not Found", path)));
+                return;
+            }
+
+            Endpoint endpoint = routes.get(path).get(exchange.getRequestMethod());
+            if (endpoint == null) {
+                exchange.getResponseHeaders().set("Allow", String.join(", ", routes.get(path).keySet()));
+                send(exchange, 405, error(String.format("Method %s Not Allowed", exchange.getRequestMethod())));
+                return;
+            }
+
+            send(exchange, 200, endpoint.handle(parameters(exchange)));
+        } catch (Product.NotFoundException | Customer.NotFoundException | ProductOrder.NotFoundException e) {
+            send(exchange, 404, error(e.getMessage()));
+        } catch (Product.NoStockException e) {
+            send(exchange, 409, error(e.getMessage()));
+        } catch (Product.InvalidOptionsException | Product.InvalidRatingException | Customer.InvalidNameException
+                | Customer.InvalidAddressException | IllegalArgumentException e) {
+            send(exchange, 400, error(e.getMessage()));
+        } catch (RuntimeException e) {
+            send(exchange, 500, error("Internal Server Error"));
+        } finally {
+            permits.release();
+        }
+    }
+
+    // Sends a response with a known length and closes the exchange, which leaves
+    // the connection open for the next request of the client.
+    private static void send(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+
+        try (InputStream in = exchange.getRequestBody()) {
+            in.transferTo(OutputStream.nullOutputStream()); // unread bodies would break the next request
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static Map<String, String> parameters(HttpExchange exchange) throws IOException {
+        Map<String, String> params = new HashMap<>();
+
+        decode(exchange.getRequestURI().getRawQuery(), params);
+
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        if (contentType != null && contentType.startsWith("application/x-www-form-urlencoded")) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            exchange.getRequestBody().transferTo(body);
+
+            decode(body.toString(StandardCharsets.UTF_8), params);
+        }
+
+        return params;
+    }
+
+    private static void decode(String form, Map<String, String> params) {
+        if (form == null || form.isEmpty()) {
+            return;
+        }
+
+        for (String pair : form.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+
+            params.put(URLDecoder.decode(name, StandardCharsets.UTF_8),
+                    URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+    }
+
+    private static String required(Map<String, String> params, String name) {
+        String value = params.get(name);
+
+        if (value == null) {
+            throw new IllegalArgumentException(String.format("Missing Parameter %s", name));
+        }
+
+        return value;
+    }
+
+    private static int intParam(Map<String, String> params, String name, int defaultValue) {
+        String value = params.get(name);
+
+        try {
+            return value == null ? defaultValue : Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("Parameter %s Invalid Number: %s", name, value));
+        }
+    }
+
+    private static StringBuilder product(StringBuilder json, Product product) {
+        json.append('{');
+        field(json, "id", product.getId()).append(',');
+        field(json, "type", product.getClass().getSimpleName()).append(',');
+        field(json, "name", product.getName()).append(',');
+        field(json, "category", product.getCategory().name()).append(',');
+        json.append("\"price\":").append(product.getPrice()).append(",\"stock\":[");
+
+        for (int variant = 0; variant < product.getVariantCount(); variant++) {
+            json.append(variant > 0 ? "," : "").append(product.getStock(variant));
+        }
+        json.append(']');
+
+        if (product instanceof Book) {
+            Book book = (Book) product;
+
+            field(json.append(','), "title", book.getTitle()).append(',');
+            field(json, "author", book.getAuthor()).append(",\"year\":").append(book.getYear());
+        } else if (product instanceof Shoes) {
+            Shoes shoes = (Shoes) product;
+
+            strings(json.append(",\"sizes\":"), shoes.getSizes());
+            strings(json.append(",\"colors\":"), shoes.getColors());
+        }
+
+        return json.append('}');
+    }
+
+    private static StringBuilder customer(StringBuilder json, Customer customer) {
+        json.append('{');
+        field(json, "id", customer.getId()).append(',');
+        field(json, "name", customer.getName()).append(',');
+        field(json, "address", customer.getShippingAddress());
+
+        return json.append('}');
+    }
+
+    private static StringBuilder order(StringBuilder json, ProductOrder order) {
+        json.append('{');
+        field(json, "orderNumber", order.getOrderNumber()).append(',');
+        field(json, "customerId", order.getCustomerId()).append(',');
+        field(json, "productId", order.getProductId()).append(',');
+        field(json, "productName", order.getProduct().getName()).append(',');
+        field(json, "options", order.getProductOptions());
+
+        return json.append('}');
+    }
+
+    private static String error(String message) {
+        return field(new StringBuilder("{"), "error", message).append('}').toString();
+    }
+
+    private static StringBuilder strings(StringBuilder json, String[] values) {
+        json.append('[');
+        for (int i = 0; i < values.length; i++) {
+            quote(i > 0 ? json.append(',') : json, values[i]);
+        }
+
+        return json.append(']');
+    }
+
+    private static StringBuilder field(StringBuilder json, String name, String value) {
+        return quote(quote(json, name).append(':'), value);
+    }
+
+    private static StringBuilder quote(StringBuilder json, String value) {
+        if (value == null) {
+            return json.append("null");
+        }
+
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+
+        return json.append('"');
+    }
+
+    // Virtual threads need Java 21, so they are looked up reflectively to keep
+    // the server running on older JDKs.
+    private static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(); // the permits bound the threads doing real work
+        }
+    }
+
+    /**
+     * This interface represents a single endpoint of the server, which turns the
+     * parameters of a request into the JSON body of its response.
+     */
+    @FunctionalInterface
+    private interface Endpoint {
+        String handle(Map<String, String> params);
+    }
+}
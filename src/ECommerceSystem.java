@@ -1,686 +1,2018 @@
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Iterator;
-import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.TreeMap;
-
-/**
- * This class represents the ECommerceSystem. It is responsible for managing
- * all of the products, customers, and product orders. It has the ability to
- * create new customers, place, cancel, and ship orders. It also has the ability
- * to print out all of the products, customers, and orders.
- *
- * @author Ali Rizvi (501039655)
- * @see Product
- * @see Customer
- * @see ProductOrder
- */
-public class ECommerceSystem {
-    private final Map<String, Product> products = new TreeMap<>();
-
-    private final List<Customer> customers = new ArrayList<>();
-
-    private final Map<String, ProductOrder> orders = new TreeMap<>();
-    private final Map<String, ProductOrder> shippedOrders = new TreeMap<>();
-
-    private final Map<String, Integer> stats = new TreeMap<>();
-    private final Map<Integer, List<String>> ratings = new TreeMap<>();
-
-    private int orderNumber = 500;
-    private int customerId = 900;
-    private int productId = 700;
-
-    /**
-     * Constructs a new ECommerceSystem. This constructor will generate a variety of
-     * pre-defined products and customers.
-     */
-    public ECommerceSystem() {
-        String id;
-        /*
-         * products.put(id = generateProductId(), new Product("Acer Laptop", id, 989.0,
-         * 99, Product.Category.COMPUTERS));
-         * products.put(id = generateProductId(), new Product("Apex Desk", id, 1378.0,
-         * 12, Product.Category.FURNITURE));
-         * products.put(id = generateProductId(),
-         * new Book("Book", id, 45.0, 4, 2, "Ahm Gonna Make You Learn", "T. McInerney",
-         * 1999));
-         * products.put(id = generateProductId(), new Product("DadBod Jeans", id, 24.0,
-         * 50, Product.Category.CLOTHING));
-         * products.put(id = generateProductId(), new Product("Polo High Socks", id,
-         * 5.0, 199, Product.Category.CLOTHING));
-         * products.put(id = generateProductId(), new Product("Tightie Whities", id,
-         * 15.0, 99, Product.Category.CLOTHING));
-         * products.put(id = generateProductId(),
-         * new Book("Book", id, 35.0, 4, 2, "How to Fool Your Prof", "D. Umbast",
-         * 2002));
-         * products.put(id = generateProductId(),
-         * new Book("Book", id, 45.0, 4, 2, "How to Escape from Prison", "A. Fugitive",
-         * 1996));
-         * products.put(id = generateProductId(),
-         * new Book("Book", id, 44.0, 14, 12, "Ahm Gonna Make You Learn More",
-         * "T. McInerney", 2004));
-         * products.put(id = generateProductId(), new Product("Rock Hammer", id, 10.0,
-         * 22, Product.Category.GENERAL));
-         * products.put(id = generateProductId(), new Shoes("Nike Shoes", id, 40.0,
-         * Map.of("black", new int[] { 50, 60, 65, 80, 90 }, "brown", new int[] { 40,
-         * 45, 55, 75, 80 })));
-         * products.put(id = generateProductId(), new Shoes("Adidas Premium", id, 155.0,
-         * Map.of("black", new int[] { 5, 5, 4, 8, 10 }, "brown", new int[] { 5, 4, 6,
-         * 5, 3 })));
-         */
-
-        customers.add(new Customer(id = generateCustomerId(), "Inigo Montoya", "1 SwordMaker Lane, Florin"));
-        customers.add(new Customer(id = generateCustomerId(), "Prince Humperdinck", "The Castle, Florin"));
-        customers.add(new Customer(id = generateCustomerId(), "Andy Dufresne", "Shawshank Prison, Maine"));
-        customers.add(new Customer(id = generateCustomerId(), "Ferris Bueller", "4160 Country Club Drive, Long Beach"));
-
-        try (BufferedReader reader = Files.newBufferedReader(Paths.get("products.txt"))) {
-            String[] lines = new String[5]; // 5 lines per product
-
-            for (int i = 0; (lines[i] = reader.readLine()) != null; i = (i + 1) % lines.length) {
-                if (i == lines.length - 1) {
-                    Product.Category category = Product.Category.valueOf(lines[0]);
-                    String name = lines[1];
-                    double price = Double.parseDouble(lines[2]);
-
-                    if (category == Product.Category.BOOKS) {
-                        String[] stock = lines[3].split(" ");
-
-                        int paperbackStock = Integer.parseInt(stock[0]);
-                        int hardcoverStock = Integer.parseInt(stock[1]);
-
-                        String[] info = lines[4].split(":");
-
-                        String title = info[0];
-                        String author = info[1];
-                        int year = Integer.parseInt(info[2]);
-
-                        products.put(id = generateProductId(),
-                                new Book(name, id, price, paperbackStock, hardcoverStock, title, author, year));
-                    } else {
-                        int stock = Integer.parseInt(lines[3]);
-
-                        products.put(id = generateProductId(), new Product(name, id, price, stock, category));
-                    }
-                }
-            }
-        } catch (IOException e) {
-            System.out.println(e.getMessage());
-            System.exit(1);
-        }
-    }
-
-    private String generateOrderNumber() {
-        return Integer.toString(orderNumber++);
-    }
-
-    private String generateCustomerId() {
-        return Integer.toString(customerId++);
-    }
-
-    private String generateProductId() {
-        return Integer.toString(productId++);
-    }
-
-    /**
-     * Prints out all of the products in the system.
-     */
-    public void printAllProducts() {
-        for (Product p : products.values()) {
-            System.out.print(p);
-        }
-    }
-
-    /**
-     * Prints out all of the products in the system that are books.
-     */
-    public void printAllBooks() {
-        for (Product p : products.values()) {
-            if (p instanceof Book) {
-                System.out.print(p);
-            }
-        }
-    }
-
-    /**
-     * Prints out all of the products in the system that are shoes.
-     */
-    public void printAllShoes() {
-        for (Product p : products.values()) {
-            if (p instanceof Shoes) {
-                System.out.print(p);
-            }
-        }
-    }
-
-    /**
-     * Prints all active orders in the system.
-     */
-    public void printAllOrders() {
-        for (ProductOrder o : orders.values()) {
-            System.out.print(o);
-        }
-    }
-
-    /**
-     * Prints all shipped orders in the system.
-     */
-    public void printAllShippedOrders() {
-        for (ProductOrder o : shippedOrders.values()) {
-            System.out.print(o);
-        }
-    }
-
-    /**
-     * Prints all the customers in the system.
-     */
-    public void printCustomers() {
-        for (Customer c : customers) {
-            System.out.print(c);
-        }
-    }
-
-    /**
-     * Prints out the order history of a customer. This will print out all active
-     * orders and shipped orders, if any.
-     *
-     * @param customerId The customer ID of the customer whose order history is to
-     *                   be printed.
-     *
-     * @throws Customer.NotFoundException If the customer with the given ID does not
-     *                                    exist.
-     */
-    public void printOrderHistory(String customerId) {
-        boolean found = false;
-        for (Customer c : customers) {
-            if (c.getId().equals(customerId)) {
-                found = true;
-                break; // break early, customer has been found
-            }
-        }
-
-        if (!found) {
-            throw new Customer.NotFoundException(customerId);
-        }
-
-        System.out.println("Current Orders of Customer " + customerId);
-        for (ProductOrder o : orders.values()) {
-            if (o.fromCustomer(customerId)) {
-                System.out.print(o);
-            }
-        }
-
-        System.out.println("\nShipped Orders of Customer " + customerId);
-        for (ProductOrder o : shippedOrders.values()) {
-            if (o.fromCustomer(customerId)) {
-                System.out.print(o);
-            }
-        }
-    }
-
-    /**
-     * Orders a specified product for a specified customer with the given product
-     * options. Validates product stock and options, exceptions are thrown if
-     * neither is valid.
-     *
-     * @param productId      The product ID of the product to be ordered.
-     * @param customerId     The customer ID of the customer who is ordering the
-     *                       product.
-     * @param productOptions The product options to be used when ordering the
-     *                       product.
-     * @return The order number of the order.
-     *
-     * @throws Product.NotFoundException       If the product ID is not found.
-     * @throws Customer.NotFoundException      If the customer ID is not found.
-     * @throws Product.InvalidOptionsException If the product options are invalid.
-     * @throws Product.NoStockException        If the product is out of stock.
-     */
-    public String orderProduct(String productId, String customerId, String productOptions) {
-        Product product = products.get(productId);
-        Customer customer = null;
-
-        for (Customer c : customers) {
-            if (c.getId().equals(customerId)) {
-                customer = c;
-                break;
-            }
-        }
-
-        if (product == null) {
-            throw new Product.NotFoundException(productId);
-        }
-
-        if (customer == null) {
-            throw new Customer.NotFoundException(customerId);
-        }
-
-        if (!product.validOptions(productOptions)) {
-            throw new Product.InvalidOptionsException(product, productOptions);
-        }
-
-        if (!product.hasStock(productOptions)) {
-            throw new Product.NoStockException(product);
-        }
-
-        String orderNumber = generateOrderNumber();
-        ProductOrder order = new ProductOrder(orderNumber, product, customer, productOptions);
-
-        product.reduceStock(productOptions);
-        orders.put(orderNumber, order);
-
-        stats.put(productId, stats.getOrDefault(productId, 0) + 1);
-
-        return orderNumber;
-    }
-
-    /**
-     * Creates a new customer and saves their data to the system. Validates inputs,
-     * and throws an exception is they cannot be validated.
-     *
-     * @param name    The name of the customer.
-     * @param address The address of the customer.
-     *
-     * @throws Customer.InvalidNameException    If the name is invalid.
-     * @throws Customer.InvalidAddressException If the address is invalid.
-     */
-    public void createCustomer(String name, String address) {
-        if (name == null || name.equals("")) {
-            throw new Customer.InvalidNameException();
-        }
-
-        if (address == null || address.equals("")) {
-            throw new Customer.InvalidAddressException();
-        }
-
-        customers.add(new Customer(generateCustomerId(), name, address));
-    }
-
-    /**
-     * Ships an active order. This will remove the order from the active orders and
-     * place it into a separate list of shipped orders. This cannot be used with
-     * orders that were cancelled or have already been shipped. If the order cannot
-     * be found, an exception is thrown.
-     *
-     * @param orderNumber The order number of the order to be shipped.
-     * @return An instance of the shipped order.
-     *
-     * @throws ProductOrder.NotFoundException If the order cannot be found.
-     */
-    public ProductOrder shipOrder(String orderNumber) {
-        ProductOrder order = orders.get(orderNumber);
-
-        if (order == null) {
-            throw new ProductOrder.NotFoundException(orderNumber);
-        }
-
-        orders.remove(orderNumber);
-        shippedOrders.put(orderNumber, order);
-
-        return order;
-    }
-
-    /**
-     * Cancels an active order. This will remove the order from the active orders.
-     * This will not work for orders that have already been cancelled or have
-     * shipped. If the order is not found, this will throw an exception.
-     *
-     * @param orderNumber The order number of the order to be cancelled.
-     *
-     * @throws ProductOrder.NotFoundException If the order cannot be found.
-     */
-    public void cancelOrder(String orderNumber) {
-        ProductOrder order = orders.get(orderNumber);
-
-        if (order == null) {
-            throw new ProductOrder.NotFoundException(orderNumber);
-        }
-
-        order.cancelOrder();
-        orders.remove(orderNumber);
-
-        stats.put(order.getProductId(), stats.getOrDefault(order.getProductId(), 0) - 1);
-    }
-
-    /**
-     * Sorts products by their price, in ascending order.
-     */
-    public void printByPrice() {
-        List<Product> sortedProducts = new ArrayList<>(products.values());
-        Collections.sort(sortedProducts, (p1, p2) -> Double.compare(p1.getPrice(), p2.getPrice()));
-
-        for (Product p : sortedProducts) {
-            System.out.print(p);
-        }
-    }
-
-    /**
-     * Sorts products by their name, in alphabetical order.
-     */
-    public void printByName() {
-        List<Product> sortedProducts = new ArrayList<>(products.values());
-        Collections.sort(sortedProducts, (p1, p2) -> p1.getName().compareTo(p2.getName()));
-
-        for (Product p : sortedProducts) {
-            System.out.print(p);
-        }
-    }
-
-    /**
-     * Sorts customers by their name, in alphabetical order.
-     */
-    public void sortCustomersByName() {
-        Collections.sort(customers);
-    }
-
-    /**
-     * Prints all books in the system that were written by a specific author. This
-     * will also print them in ascending order based on the year they were
-     * published.
-     *
-     * @param author The author to search for.
-     */
-    public void printBooksByAuthor(String author) {
-        ArrayList<Book> books = new ArrayList<>();
-        for (Product p : products.values()) {
-            if (p instanceof Book && ((Book) p).getAuthor().equals(author)) {
-                books.add((Book) p); // hacky cast which will always pass due to the instanceof check
-            }
-        }
-
-        Collections.sort(books, (b1, b2) -> Integer.compare(b1.getYear(), b2.getYear()));
-
-        for (Book b : books) {
-            System.out.print(b);
-        }
-    }
-
-    /**
-     * Adds an item to a customers cart with specific options. Options are validated
-     * and an exception is thrown if they are not valid. If the item is not in
-     * stock, an exception is also thrown. Once everything is validated, the item is
-     * added to the customer's cart.
-     *
-     * @param productId      The product ID of the item to be added.
-     * @param customerId     The customer ID of the customer who is adding the item.
-     * @param productOptions The product options to be used when adding the item.
-     *
-     * @throws Product.NotFoundException       If the product ID is not found.
-     * @throws Product.InvalidOptionsException If the product options are invalid.
-     * @throws Product.NoStockException        If the product is not in stock.
-     * @throws Customer.NotFoundException      If the customer ID is not found.
-     */
-    public void addToCart(String productId, String customerId, String productOptions) {
-        Product product = products.get(productId);
-        Customer customer = null;
-
-        for (Customer c : customers) {
-            if (c.getId().equals(customerId)) {
-                customer = c;
-                break;
-            }
-        }
-
-        if (product == null) {
-            throw new Product.NotFoundException(productId);
-        }
-
-        if (customer == null) {
-            throw new Customer.NotFoundException(customerId);
-        }
-
-        if (!product.validOptions(productOptions)) {
-            throw new Product.InvalidOptionsException(product, productOptions);
-        }
-
-        if (!product.hasStock(productOptions)) {
-            throw new Product.NoStockException(product);
-        }
-
-        customer.getCart().getItems().add(new CartItem(product, productOptions));
-    }
-
-    /**
-     * Removes an item from a customers cart. If the item is not in the cart, an
-     * exception is thrown.
-     *
-     * @param productId  The product ID of the item to be removed.
-     * @param customerId The customer ID of the customer who is removing the item.
-     *
-     * @throws Product.NotFoundException  If the product ID is not found.
-     * @throws Customer.NotFoundException If the customer ID is not found.
-     */
-    public void removeFromCart(String productId, String customerId) {
-        Product product = products.get(productId);
-        Customer customer = null;
-
-        for (Customer c : customers) {
-            if (c.getId().equals(customerId)) {
-                customer = c;
-                break;
-            }
-        }
-
-        if (product == null) {
-            throw new Product.NotFoundException(productId);
-        }
-
-        if (customer == null) {
-            throw new Customer.NotFoundException(customerId);
-        }
-
-        customer.getCart().removeItem(productId);
-    }
-
-    /**
-     * Prints a customers cart.
-     *
-     * @param customerId The customer ID of the customer who's cart is to be
-     *                   printed.
-     *
-     * @throws Customer.NotFoundException If the customer ID is not found.
-     */
-    public void printCart(String customerId) {
-        Customer customer = null;
-
-        for (Customer c : customers) {
-            if (c.getId().equals(customerId)) {
-                customer = c;
-                break;
-            }
-        }
-
-        if (customer == null) {
-            throw new Customer.NotFoundException(customerId);
-        }
-
-        for (CartItem item : customer.getCart().getItems()) {
-            System.out.print(String.format("\nCustomer Id: %3s Product Id: %3s Product Name: %12s Options: %8s",
-                    customerId, item.getProduct().getId(), item.getProduct().getName(), item.getOptions()));
-        }
-    }
-
-    /**
-     * Orders all the items from a customers cart, clearing out their cart. Stock is
-     * validated once again to ensure items still exist, and an exception is thrown
-     * is there is no stock available. Once the item is ordered, it is removed from
-     * the customers cart.
-     *
-     * @param customerId The customer ID of the customer who's cart is to be
-     *                   ordered.
-     *
-     * @throws Customer.NotFoundException If the customer ID is not found.
-     * @throws Product.NoStockException   If the product is not in stock.
-     */
-    public void orderItems(String customerId) {
-        Customer customer = null;
-
-        for (Customer c : customers) {
-            if (c.getId().equals(customerId)) {
-                customer = c;
-                break;
-            }
-        }
-
-        if (customer == null) {
-            throw new Customer.NotFoundException(customerId);
-        }
-
-        Iterator<CartItem> it = customer.getCart().getItems().iterator();
-        while (it.hasNext()) {
-            CartItem item = it.next();
-
-            if (!item.getProduct().hasStock(item.getOptions())) {
-                throw new Product.NoStockException(item.getProduct());
-            }
-
-            String orderNumber = generateOrderNumber();
-            ProductOrder order = new ProductOrder(orderNumber, item.getProduct(), customer, item.getOptions());
-
-            item.getProduct().reduceStock(item.getOptions());
-            orders.put(orderNumber, order);
-
-            it.remove();
-        }
-    }
-
-    /**
-     * Prints out statistics for how many items a product has been ordered through
-     * the system.
-     */
-    public void printStats() {
-        List<Entry<String, Integer>> statList = new ArrayList<>(stats.entrySet());
-
-        Collections.sort(statList, (e1, e2) -> Integer.compare(e2.getValue(), e1.getValue()));
-
-        for (Entry<String, Integer> stat : statList) {
-            String productId = stat.getKey();
-            int count = stat.getValue();
-
-            System.out.print(String.format("\nName: %-20s ID: %3s Ordered: %d", products.get(productId).getName(),
-                    productId, count));
-        }
-    }
-
-    /**
-     * Adds a rating to a specific rating. If the rating is not found, an exception
-     * is thrown.
-     *
-     * @param productId The product ID of the product being rated.
-     * @param rating    The rating to be added.
-     *
-     * @throws Product.NotFoundException      If the product ID is not found.
-     * @throws Product.InvalidRatingException If the rating is invalid.
-     */
-    public void addRating(String productId, int rating) {
-        Product product = products.get(productId);
-
-        if (product == null) {
-            throw new Product.NotFoundException(productId);
-        }
-
-        if (rating < 1 || rating > 5) {
-            throw new Product.InvalidRatingException(product, rating);
-        }
-
-        if (!ratings.containsKey(rating)) {
-            ratings.put(rating, new ArrayList<>());
-        }
-
-        ratings.get(rating).add(productId);
-    }
-
-    /**
-     * Prints out the ratings for a specified product.
-     *
-     * @param productId The product ID of the product being rated.
-     *
-     * @throws Product.NotFoundException If the product ID is not found.
-     */
-    public void printRatingsByProductId(String productId) {
-        Product product = products.get(productId);
-
-        if (product == null) {
-            throw new Product.NotFoundException(productId);
-        }
-
-        System.out.println(String.format("\nProduct Id: %3s Product Name: %12s", productId, product.getName()));
-        for (int i = 1; i <= 5; i++) {
-            if (!ratings.containsKey(i)) {
-                continue;
-            }
-
-            int count = 0;
-            for (String id : ratings.get(i)) {
-                if (id.equals(productId)) {
-                    count++;
-                }
-            }
-
-            System.out.print(String.format("%dx %s", count, new String(new char[i]).replace("\0", "*")));
-            System.out.println();
-        }
-    }
-
-    /**
-     * Prints out the ratings for all products in a specified category.
-     *
-     * @param category  The category of the products being rated.
-     * @param threshold The minimum number of ratings required for a product to be
-     */
-    public void printRatingsByCategory(Product.Category category, int threshold) {
-        for (Product p : products.values()) {
-            if (p.getCategory().equals(category)) {
-                double average = 0;
-                int total = 0;
-
-                for (int i = 1; i <= 5; i++) {
-                    if (!ratings.containsKey(i)) {
-                        continue;
-                    }
-
-                    long r = ratings.get(i).stream().filter(x -> x.equals(p.getId())).count(); // get the count of how
-                                                                                               // many ratings for each
-                                                                                               // product
-
-                    average += r * i;
-                    total += r;
-                }
-
-                if (total <= 0) {
-                    continue;
-                }
-
-                average /= total;
-
-                if (average >= threshold) {
-                    System.out.print(String.format("\nProduct Id: %3s Product Name: %12s Average Rating: %.2f",
-                            p.getId(), p.getName(), average));
-                }
-            }
-        }
-    }
-
-    /**
-     * Utility method to find the type of a product based off of its productId. If a
-     * product cannot be found, it throws an exception.
-     *
-     * @param productId The productId of the product to find the type of.
-     * @return The type of the product.
-     *
-     * @throws Product.NotFoundException If the product cannot be found.
-     */
-    public Class<? extends Product> getProductType(String productId) {
-        Product product = products.get(productId);
-        if (product == null) {
-            throw new Product.NotFoundException(productId);
-        }
-
-        return product.getClass();
-    }
-}
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * This class represents the ECommerceSystem. It is responsible for managing
+ * all of the products, customers, and product orders. It has the ability to
+ * create new customers, place, cancel, and ship orders. It also has the ability
+ * to print out all of the products, customers, and orders.
+ *
+ * The system can be shared by many threads. Stock is reserved and released
+ * atomically without locks, and carts are guarded by locks striped by customer
+ * ID, so orders never block each other. Orders are claimed atomically when they
+ * are shipped or cancelled, so an order can only ever be shipped or cancelled
+ * once. The product catalog is read from immutable snapshots, so browsing never
+ * takes a lock and never sees a change to the catalog half applied.
+ *
+ * A system with a state directory records every order, cancellation,
+ * shipment, new customer, rating, and cart change in a {@link Journal} before
+ * it is acknowledged. A background thread takes snapshots of the whole state,
+ * after which the journal before the snapshot is deleted. When the system is
+ * constructed again, it loads the latest snapshot and replays only the journal
+ * after it, so a restart loses nothing that was acknowledged and never has to
+ * replay more than the journal since the last snapshot.
+ *
+ * @author Ali Rizvi (501039655)
+ * @see Product
+ * @see Customer
+ * @see ProductOrder
+ */
+public class ECommerceSystem implements AutoCloseable {
+    // The global order stock is reserved in when checking out a cart.
+    private static final Comparator<CartItem> RESERVE_ORDER = Comparator
+            .comparing((CartItem item) -> item.getProduct().getId(), Identifiers.ORDER)
+            .thenComparingInt(CartItem::getVariant);
+
+    private final VersionedCatalog products = new VersionedCatalog();
+
+    private final CustomerRegistry customers = new CustomerRegistry();
+
+    private final StripedIntMap<ProductOrder> orders = new StripedIntMap<>();
+    private final ShippedOrderArchive shippedOrders;
+    private final OrderHistoryIndex orderHistory = new OrderHistoryIndex();
+
+    private final SalesRanking stats = new SalesRanking();
+    private final Map<String, RatingHistogram> ratings = new ConcurrentHashMap<>();
+    private final RatingHistogram allRatings = new RatingHistogram();
+
+    private final StripedLocks customerLocks = new StripedLocks();
+
+    // The batch of mutations each thread began, if any, see beginBatch().
+    private final ThreadLocal<Batch> batches = new ThreadLocal<>();
+
+    // What a mutation applies or gives back when it has nothing to.
+    private static final Runnable NOTHING = () -> {
+    };
+
+    // Products loaded from products.txt are numbered by their record in the file,
+    // so their IDs are stable without persisting a high-water mark.
+    private static final int FIRST_PRODUCT_ID = 700;
+
+    // The catalog exported to the state directory, which replaces products.txt
+    // when it exists.
+    private static final String CATALOG_FILE = "catalog.bin";
+
+    // The directory of the shipped order archive, inside the state directory.
+    private static final String SHIPPED_DIRECTORY = "shipped";
+
+    // Snapshot n holds the state of the system before journal segment n. Its
+    // catalog is written first and its state last, so a snapshot exists once its
+    // state file does.
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_CATALOG_SUFFIX = ".catalog";
+    private static final String SNAPSHOT_STATE_SUFFIX = ".state";
+    private static final int SNAPSHOT_MAGIC = 0x45535441; // "ESTA"
+    private static final int SNAPSHOT_VERSION = 2;
+    private static final long NO_SNAPSHOT = -1;
+    private static final long FIRST_SEGMENT = 1;
+
+    // A snapshot is taken once this many mutations were journaled since the last
+    // one, or once the interval passed since the last one and anything changed.
+    private static final long SNAPSHOT_RECORDS = 100_000;
+    private static final long SNAPSHOT_INTERVAL_MILLIS = 60_000;
+    private static final long SNAPSHOT_CHECK_MILLIS = 1_000;
+
+    private final IdAllocator orderNumbers;
+    private final IdAllocator customerIds;
+    private final IdAllocator productIds;
+
+    private final Path stateDirectory;
+    private final Journal journal;
+    private final Thread snapshotter;
+
+    // The latest snapshot, and the journal sequence number it was taken at, both
+    // guarded by snapshotLock.
+    private final Object snapshotLock = new Object();
+
+    // Held shared by every shipment from its journal record until it is in the
+    // archive, and exclusively by a snapshot while it rotates the journal, so a
+    // snapshot never deletes the record of a shipment the archive does not hold.
+    private final ReadWriteLock shipLock = new ReentrantReadWriteLock();
+    private long snapshot = NO_SNAPSHOT;
+    private long snapshotSequence;
+    private boolean closed;
+
+    /**
+     * Constructs a new ECommerceSystem. This constructor will generate a variety of
+     * pre-defined products and customers. Order numbers and customer IDs are only
+     * unique for the lifetime of this system.
+     */
+    public ECommerceSystem() {
+        this(null);
+    }
+
+    /**
+     * Constructs a new ECommerceSystem that persists its state to a state
+     * directory, where every mutation waits until it is durable. See
+     * {@link #ECommerceSystem(Path, Journal.Durability)}.
+     *
+     * @param stateDirectory The directory to persist the state of the system to,
+     *                       or null to keep the system in memory only.
+     *
+     * @throws UncheckedIOException If the state directory could not be read or
+     *                              created.
+     */
+    public ECommerceSystem(Path stateDirectory) {
+        this(stateDirectory, Journal.Durability.SYNC);
+    }
+
+    /**
+     * Constructs a new ECommerceSystem that persists its state to a state
+     * directory. The high-water marks of order numbers and customer IDs are
+     * persisted, so they are never reused after a restart. The latest snapshot of
+     * the directory is loaded, and the journal after it is replayed. How long the
+     * recovery took is printed. Without a snapshot, the catalog is loaded as
+     * usual, and a first snapshot is taken. The pre-defined customers are only
+     * generated when the system has no customers yet.
+     *
+     * @param stateDirectory The directory to persist the state of the system to,
+     *                       or null to keep the system in memory only.
+     * @param durability     How long mutations wait for the journal to be durable.
+     *
+     * @throws UncheckedIOException If the state directory could not be read or
+     *                              created.
+     */
+    public ECommerceSystem(Path stateDirectory, Journal.Durability durability) {
+        this.stateDirectory = stateDirectory;
+
+        if (stateDirectory != null) {
+            try {
+                Files.createDirectories(stateDirectory);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            orderNumbers = new IdAllocator(500, stateDirectory.resolve("orders.hwm"));
+            customerIds = new IdAllocator(900, stateDirectory.resolve("customers.hwm"));
+            shippedOrders = new ShippedOrderArchive(stateDirectory.resolve(SHIPPED_DIRECTORY),
+                    ShippedOrderArchive.DEFAULT_SEGMENT_SIZE, this::resolveShipped);
+
+            // the high-water marks may have fallen behind the identifiers on disk
+            // after a crash, so allocation is moved past every identifier recovered
+            orderNumbers.advancePast(shippedOrders.getLastOrderNumber());
+        } else {
+            orderNumbers = new IdAllocator(500);
+            customerIds = new IdAllocator(900);
+            shippedOrders = new ShippedOrderArchive(this::resolveShipped);
+        }
+
+        String id;
+        /*
+         * products.put(id = generateProductId(), new Product("Acer Laptop", id, 989.0,
+         * 99, Product.Category.COMPUTERS));
+         * products.put(id = generateProductId(), new Product("Apex Desk", id, 1378.0,
+         * 12, Product.Category.FURNITURE));
+         * products.put(id = generateProductId(),
+         * new Book("Book", id, 45.0, 4, 2, "Ahm Gonna Make You Learn", "T. McInerney",
+         * 1999));
+         * products.put(id = generateProductId(), new Product("DadBod Jeans", id, 24.0,
+         * 50, Product.Category.CLOTHING));
+         * products.put(id = generateProductId(), new Product("Polo High Socks", id,
+         * 5.0, 199, Product.Category.CLOTHING));
+         * products.put(id = generateProductId(), new Product("Tightie Whities", id,
+         * 15.0, 99, Product.Category.CLOTHING));
+         * products.put(id = generateProductId(),
+         * new Book("Book", id, 35.0, 4, 2, "How to Fool Your Prof", "D. Umbast",
+         * 2002));
+         * products.put(id = generateProductId(),
+         * new Book("Book", id, 45.0, 4, 2, "How to Escape from Prison", "A. Fugitive",
+         * 1996));
+         * products.put(id = generateProductId(),
+         * new Book("Book", id, 44.0, 14, 12, "Ahm Gonna Make You Learn More",
+         * "T. McInerney", 2004));
+         * products.put(id = generateProductId(), new Product("Rock Hammer", id, 10.0,
+         * 22, Product.Category.GENERAL));
+         * products.put(id = generateProductId(), new Shoes("Nike Shoes", id, 40.0,
+         * Map.of("black", new int[] { 50, 60, 65, 80, 90 }, "brown", new int[] { 40,
+         * 45, 55, 75, 80 })));
+         * products.put(id = generateProductId(), new Shoes("Adidas Premium", id, 155.0,
+         * Map.of("black", new int[] { 5, 5, 4, 8, 10 }, "brown", new int[] { 5, 4, 6,
+         * 5, 3 })));
+         */
+
+        long start = System.nanoTime();
+        long latest = stateDirectory != null ? latestSnapshot(stateDirectory) : NO_SNAPSHOT;
+        long nextProductId = FIRST_PRODUCT_ID;
+
+        try {
+            nextProductId = latest != NO_SNAPSHOT ? loadSnapshot(stateDirectory, latest) : loadCatalog(stateDirectory);
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+            System.exit(1);
+        }
+
+        productIds = new IdAllocator((int) nextProductId);
+
+        if (stateDirectory != null) {
+            long[] replayed = new long[1];
+
+            // the journal is still null while it is replayed, so nothing replayed is
+            // recorded again
+            journal = new Journal(stateDirectory, durability, latest != NO_SNAPSHOT ? latest : FIRST_SEGMENT,
+                    record -> {
+                        replayed[0]++;
+                        replay(record);
+                    });
+
+            // an order whose shipment reached the archive but not the journal is
+            // shipped, not active
+            for (int orderNumber : orders.sortedKeys()) {
+                if (shippedOrders.contains(Integer.toString(orderNumber))) {
+                    ProductOrder order = orders.remove(orderNumber);
+                    orderHistory.ship(order.getCustomerId(), order.getOrderNumber());
+                }
+            }
+
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            System.out.println(latest != NO_SNAPSHOT
+                    ? String.format("Recovered Snapshot %d And %d Journal Records In %d ms", latest, replayed[0],
+                            millis)
+                    : String.format("Recovered %d Journal Records In %d ms", replayed[0], millis));
+
+            if (latest == NO_SNAPSHOT) {
+                try {
+                    // nothing else runs yet, so the state can be written as it is
+                    latest = journal.getSegment();
+                    writeSnapshot(stateDirectory, latest);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+
+                shippedOrders.sync(); // the journal no longer holds the shipments
+                journal.deleteSegmentsBefore(latest);
+            }
+
+            snapshot = latest;
+            snapshotter = new Thread(this::snapshotPeriodically, "snapshotter");
+            snapshotter.setDaemon(true);
+            snapshotter.start();
+        } else {
+            journal = null;
+            snapshotter = null;
+        }
+
+        if (customers.size() == 0) {
+            createCustomer("Inigo Montoya", "1 SwordMaker Lane, Florin");
+            createCustomer("Prince Humperdinck", "The Castle, Florin");
+            createCustomer("Andy Dufresne", "Shawshank Prison, Maine");
+            createCustomer("Ferris Bueller", "4160 Country Club Drive, Long Beach");
+        }
+    }
+
+    // Constructs a system that is only kept in memory from a snapshot, to bring the
+    // snapshot up to date without touching the running system. Shipped orders are
+    // not part of snapshots, so the copy drops orders once they are shipped.
+    private ECommerceSystem(Path stateDirectory, long snapshot) throws IOException {
+        this.stateDirectory = null;
+        shippedOrders = null;
+
+        orderNumbers = new IdAllocator(500);
+        customerIds = new IdAllocator(900);
+        productIds = new IdAllocator((int) loadSnapshot(stateDirectory, snapshot));
+
+        journal = null;
+        snapshotter = null;
+    }
+
+    // Loads the catalog of a system without a snapshot, and returns the next
+    // product ID.
+    private long loadCatalog(Path stateDirectory) throws IOException {
+        Path catalogFile = stateDirectory != null ? stateDirectory.resolve(CATALOG_FILE) : null;
+        List<Product> loadedProducts;
+        long nextProductId = FIRST_PRODUCT_ID;
+
+        if (catalogFile != null && Files.exists(catalogFile)) {
+            // an exported catalog keeps the stock and variants products.txt cannot hold
+            loadedProducts = BinaryCatalog.read(catalogFile);
+            nextProductId = nextProductId(loadedProducts);
+        } else {
+            CatalogLoader.Result loaded = new CatalogLoader(FIRST_PRODUCT_ID).load(Paths.get("products.txt"));
+
+            for (CatalogLoader.Problem problem : loaded.getProblems()) {
+                System.out.println(problem); // malformed records are skipped, the rest of the catalog still loads
+            }
+
+            loadedProducts = loaded.getProducts();
+            nextProductId = FIRST_PRODUCT_ID + loaded.getRecordCount();
+        }
+
+        products.update(catalog -> loadedProducts.forEach(catalog::add)); // one version for the whole file
+
+        return nextProductId;
+    }
+
+    private static long nextProductId(List<Product> loadedProducts) {
+        long nextProductId = FIRST_PRODUCT_ID;
+
+        for (Product product : loadedProducts) {
+            nextProductId = Math.max(nextProductId, Identifiers.parse(product.getId()) + 1L);
+        }
+
+        return nextProductId;
+    }
+
+    // Applies a mutation recorded in the journal.
+    private void replay(Journal.Record record) {
+        try {
+            switch (record.getType()) {
+            case CUSTOMER:
+                customerIds.advancePast(Identifiers.parse(record.getField(0)));
+                customers.add(new Customer(record.getField(0), record.getField(1), record.getField(2)));
+                break;
+            case ORDER:
+                replayOrder(record.getField(0), record.getField(1), record.getField(2), record.getField(3));
+                break;
+            case CHECKOUT:
+                replayCheckout(record);
+                break;
+            case CANCEL:
+                cancelOrder(record.getField(0));
+                break;
+            case SHIP:
+                replayShip(record.getField(0));
+                break;
+            case RATING:
+                getProduct(record.getField(0));
+                addRatings(record.getField(0), Integer.parseInt(record.getField(1)),
+                        record.getFieldCount() > 2 ? Long.parseLong(record.getField(2)) : 1);
+                break;
+            case CART_ADD:
+                Product product = getProduct(record.getField(1));
+
+                getCustomer(record.getField(0)).getCart().getItems()
+                        .add(new CartItem(product, record.getField(2), product.parseOptions(record.getField(2))));
+                break;
+            case CART_REMOVE:
+                getCustomer(record.getField(0)).getCart().removeItem(record.getField(1));
+                break;
+            }
+        } catch (RuntimeException e) {
+            // a record that no longer applies, such as an order of a product that was
+            // removed from the catalog, is skipped and the rest of the journal still
+            // replays
+            System.out.println(e.getMessage());
+        }
+    }
+
+    private void replayOrder(String orderNumber, String productId, String customerId, String productOptions) {
+        orderNumbers.advancePast(Identifiers.parse(orderNumber)); // even if the order no longer applies
+
+        Product product = getProduct(productId);
+        Customer customer = getCustomer(customerId);
+
+        publishOrder(orderNumber, product, customer, productOptions, reserveReplayed(product, productOptions));
+    }
+
+    // Replays a checkout as a whole. Every item is reserved before any order is
+    // placed, so if one item no longer applies, what the others reserved is
+    // released, no order is placed, and the cart is kept.
+    private void replayCheckout(Journal.Record record) {
+        for (int i = 1; i < record.getFieldCount(); i += 3) {
+            orderNumbers.advancePast(Identifiers.parse(record.getField(i))); // even if the checkout no longer applies
+        }
+
+        Customer customer = getCustomer(record.getField(0));
+        List<Product> reserved = new ArrayList<>();
+        int[] variants = new int[record.getFieldCount() / 3];
+
+        try {
+            for (int i = 1; i < record.getFieldCount(); i += 3) {
+                Product product = getProduct(record.getField(i + 1));
+
+                variants[reserved.size()] = reserveReplayed(product, record.getField(i + 2));
+                reserved.add(product);
+            }
+        } catch (RuntimeException e) {
+            for (int j = 0; j < reserved.size(); j++) {
+                reserved.get(j).release(variants[j]);
+            }
+
+            throw e;
+        }
+
+        for (int j = 0; j < reserved.size(); j++) {
+            int i = 1 + 3 * j;
+            publishOrder(record.getField(i), reserved.get(j), customer, record.getField(i + 2), variants[j]);
+        }
+
+        customer.getCart().getItems().clear();
+    }
+
+    // Reserves the variant a recorded order was placed for again, and returns it.
+    private static int reserveReplayed(Product product, String productOptions) {
+        int variant = product.parseOptions(productOptions);
+
+        if (variant == Product.INVALID_VARIANT) {
+            throw new Product.InvalidOptionsException(product, productOptions);
+        }
+
+        if (!product.tryReserve(variant)) {
+            throw new Product.NoStockException(product);
+        }
+
+        return variant;
+    }
+
+    private void replayShip(String orderNumber) {
+        ProductOrder order = orders.remove(Identifiers.parse(orderNumber));
+
+        if (order == null) {
+            throw new ProductOrder.NotFoundException(orderNumber);
+        }
+
+        // the archive may already hold the order if it was forced after the journal
+        if (shippedOrders != null && !shippedOrders.contains(orderNumber)) {
+            shippedOrders.add(order);
+        }
+
+        orderHistory.ship(order.getCustomerId(), orderNumber);
+    }
+
+    // Turns a shipped order read back from the archive into an order, or returns
+    // null if its product or customer no longer exists.
+    private ProductOrder resolveShipped(String orderNumber, String productId, String customerId,
+            String productOptions) {
+        Product product = products.snapshot().get(productId);
+        Customer customer = customers.get(customerId);
+
+        if (product == null || customer == null) {
+            return null;
+        }
+
+        return new ProductOrder(orderNumber, product, customer, productOptions, product.parseOptions(productOptions));
+    }
+
+    // Appends a mutation to the journal, if the system has one.
+    private long record(Journal.Type type, String... fields) {
+        return journal != null ? journal.append(type, fields) : 0;
+    }
+
+    // Waits, if the journal requires it, until a mutation is durable.
+    private void commit(long sequence) {
+        if (journal != null) {
+            journal.commit(sequence);
+        }
+    }
+
+    // Commits a recorded mutation, and then applies it. If the commit fails, the
+    // mutation is not applied, and what it took before it was recorded is given
+    // back instead. Inside a batch, both wait until the batch is committed.
+    private void commit(long sequence, Runnable apply, Runnable undo) {
+        Batch batch = batches.get();
+
+        if (batch != null) {
+            batch.applies.add(apply);
+            batch.undos.add(undo);
+            return;
+        }
+
+        try {
+            commit(sequence);
+        } catch (RuntimeException e) {
+            undo.run();
+            throw e;
+        }
+
+        apply.run();
+    }
+
+    // Keeps a lock the caller holds locked until the batch of the calling thread
+    // is committed. Outside a batch, this does nothing.
+    private void hold(Lock lock) {
+        Batch batch = batches.get();
+
+        if (batch != null) {
+            lock.lock(); // the lock is reentrant, so this never waits
+            batch.held.add(lock);
+        }
+    }
+
+    /**
+     * Begins a batch of mutations on the calling thread. Every mutation the
+     * thread makes until the batch is committed is recorded in the journal, but
+     * only applied once the journal has been forced for the whole batch, so a
+     * mutation is never seen before it is durable. Claims and reservations still
+     * take effect right away: a cancelled or shipped order is taken out of the
+     * active orders, stock is reserved, and carts are changed. Orders and
+     * customers created in the batch cannot be found until it is committed.
+     *
+     * @throws IllegalStateException If the thread already began a batch.
+     * @see CommandPipeline
+     */
+    public void beginBatch() {
+        if (batches.get() != null) {
+            throw new IllegalStateException("Batch Already Begun");
+        }
+
+        batches.set(new Batch());
+    }
+
+    /**
+     * Commits the batch of the calling thread. The journal is forced once for
+     * every mutation of the batch, regardless of its durability, and the
+     * mutations are then applied in the order they were made. If the journal
+     * could not be forced, none of them are applied, and what they took is given
+     * back.
+     *
+     * @throws IllegalStateException If the thread has not begun a batch.
+     * @throws UncheckedIOException  If the journal could not be written.
+     */
+    public void commitBatch() {
+        Batch batch = batches.get();
+
+        if (batch == null) {
+            throw new IllegalStateException("No Batch Begun");
+        }
+
+        batches.remove();
+        try {
+            try {
+                syncJournal();
+            } catch (RuntimeException e) {
+                for (int i = batch.undos.size() - 1; i >= 0; i--) {
+                    batch.undos.get(i).run();
+                }
+
+                throw e;
+            }
+
+            for (Runnable apply : batch.applies) {
+                apply.run();
+            }
+        } finally {
+            for (Lock lock : batch.held) {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Writes and forces every mutation recorded in the journal so far, regardless
+     * of the durability of the journal. This does nothing if the system has no
+     * state directory.
+     *
+     * @throws UncheckedIOException If the journal could not be written.
+     */
+    public void syncJournal() {
+        if (journal != null) {
+            journal.sync();
+        }
+    }
+
+    /**
+     * Takes a snapshot of the whole state of the system, and deletes the journal
+     * and the snapshot it replaces. This does nothing if the system has no state
+     * directory. Snapshots are also taken periodically in the background.
+     *
+     * The running system is never paused. The journal is rotated, and the new
+     * snapshot is built from a copy of the last snapshot that is kept in memory
+     * only, by replaying the journal up to the rotation onto it.
+     *
+     * @throws UncheckedIOException If the snapshot could not be written.
+     */
+    public void snapshot() {
+        if (journal == null) {
+            return;
+        }
+
+        if (batches.get() != null) {
+            throw new IllegalStateException("Snapshot Inside A Batch"); // the batch may hold shipLock shared
+        }
+
+        synchronized (snapshotLock) {
+            long sequence;
+            long closedSegment;
+
+            shipLock.writeLock().lock();
+            try {
+                sequence = journal.getSequence();
+                closedSegment = journal.rotate();
+            } finally {
+                shipLock.writeLock().unlock();
+            }
+
+            long next = closedSegment + 1;
+
+            try {
+                ECommerceSystem copy = new ECommerceSystem(stateDirectory, snapshot);
+
+                Journal.replay(stateDirectory, snapshot, closedSegment, copy::replay);
+                copy.writeSnapshot(stateDirectory, next);
+
+                Files.delete(snapshotFile(stateDirectory, snapshot, SNAPSHOT_STATE_SUFFIX));
+                Files.delete(snapshotFile(stateDirectory, snapshot, SNAPSHOT_CATALOG_SUFFIX));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            // every shipment recorded before the rotation reached the archive under
+            // shipLock, so forcing the archive makes them durable without the journal
+            shippedOrders.sync();
+            journal.deleteSegmentsBefore(next);
+
+            snapshot = next;
+            snapshotSequence = sequence;
+        }
+    }
+
+    private void snapshotPeriodically() {
+        long lastSnapshot = System.nanoTime();
+
+        while (true) {
+            synchronized (snapshotLock) {
+                try {
+                    snapshotLock.wait(SNAPSHOT_CHECK_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                if (closed) {
+                    return;
+                }
+
+                long changes = journal.getSequence() - snapshotSequence;
+                boolean due = System.nanoTime() - lastSnapshot >= SNAPSHOT_INTERVAL_MILLIS * 1_000_000;
+
+                if (changes < SNAPSHOT_RECORDS && !(due && changes > 0)) {
+                    continue;
+                }
+            }
+
+            try {
+                snapshot();
+            } catch (RuntimeException e) {
+                System.out.println(e.getMessage()); // the journal still holds everything, try again later
+            }
+
+            lastSnapshot = System.nanoTime();
+        }
+    }
+
+    // Finds the latest snapshot of a state directory.
+    private static long latestSnapshot(Path stateDirectory) {
+        long latest = NO_SNAPSHOT;
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(stateDirectory,
+                SNAPSHOT_PREFIX + "*" + SNAPSHOT_STATE_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+
+                try {
+                    latest = Math.max(latest, Long.parseLong(
+                            name.substring(SNAPSHOT_PREFIX.length(), name.length() - SNAPSHOT_STATE_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    // not a snapshot
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return latest;
+    }
+
+    private static Path snapshotFile(Path stateDirectory, long snapshot, String suffix) {
+        return stateDirectory.resolve(SNAPSHOT_PREFIX + snapshot + suffix);
+    }
+
+    // Writes the state of the system as a snapshot. The state must not change
+    // while it is written.
+    private void writeSnapshot(Path stateDirectory, long snapshot) throws IOException {
+        BinaryCatalog.write(products.snapshot(), snapshotFile(stateDirectory, snapshot, SNAPSHOT_CATALOG_SUFFIX));
+
+        Path stateFile = snapshotFile(stateDirectory, snapshot, SNAPSHOT_STATE_SUFFIX);
+        Path temp = stateFile.resolveSibling(stateFile.getFileName() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+
+            out.writeInt(customers.size());
+            for (Customer customer : customers) {
+                List<CartItem> items = customer.getCart().getItems();
+
+                writeString(out, customer.getId());
+                writeString(out, customer.getName());
+                writeString(out, customer.getShippingAddress());
+
+                out.writeInt(items.size());
+                for (CartItem item : items) {
+                    writeString(out, item.getProduct().getId());
+                    writeString(out, item.getOptions());
+                }
+            }
+
+            writeOrders(out, orders);
+
+            List<SalesRanking.Sales> sales = stats.getTop(Integer.MAX_VALUE);
+            out.writeInt(sales.size());
+            for (SalesRanking.Sales sale : sales) {
+                writeString(out, sale.getProductId());
+                out.writeLong(sale.getCount());
+            }
+
+            out.writeInt(ratings.size());
+            for (Entry<String, RatingHistogram> entry : ratings.entrySet()) {
+                writeString(out, entry.getKey());
+
+                for (int i = RatingHistogram.MIN_RATING; i <= RatingHistogram.MAX_RATING; i++) {
+                    out.writeLong(entry.getValue().getCount(i));
+                }
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+
+        Files.move(temp, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeOrders(DataOutputStream out, StripedIntMap<ProductOrder> orders) throws IOException {
+        int[] orderNumbers = orders.sortedKeys();
+
+        out.writeInt(orderNumbers.length);
+        for (int orderNumber : orderNumbers) {
+            ProductOrder order = orders.get(orderNumber);
+
+            writeString(out, order.getOrderNumber());
+            writeString(out, order.getProductId());
+            writeString(out, order.getCustomerId());
+            writeString(out, order.getProductOptions());
+        }
+    }
+
+    // Loads a snapshot into an empty system, and returns the next product ID.
+    private long loadSnapshot(Path stateDirectory, long snapshot) throws IOException {
+        List<Product> loadedProducts = BinaryCatalog.read(snapshotFile(stateDirectory, snapshot,
+                SNAPSHOT_CATALOG_SUFFIX));
+        products.update(catalog -> loadedProducts.forEach(catalog::add));
+
+        Path stateFile = snapshotFile(stateDirectory, snapshot, SNAPSHOT_STATE_SUFFIX);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(stateFile)))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+                throw new IOException(String.format("Snapshot File %s Has Unknown Format", stateFile));
+            }
+
+            for (int i = in.readInt(); i > 0; i--) {
+                Customer customer = new Customer(readString(in), readString(in), readString(in));
+                customers.add(customer);
+                customerIds.advancePast(Identifiers.parse(customer.getId()));
+
+                for (int j = in.readInt(); j > 0; j--) {
+                    Product product = getProduct(readString(in));
+                    String productOptions = readString(in);
+
+                    customer.getCart().getItems()
+                            .add(new CartItem(product, productOptions, product.parseOptions(productOptions)));
+                }
+            }
+
+            // the stock of active orders is already reserved in the catalog of the
+            // snapshot, so orders are restored without reserving it again
+            for (int i = in.readInt(); i > 0; i--) {
+                ProductOrder order = readOrder(in);
+
+                orderHistory.addActive(order.getCustomerId(), order.getOrderNumber());
+                orders.put(Identifiers.parse(order.getOrderNumber()), order);
+                orderNumbers.advancePast(Identifiers.parse(order.getOrderNumber()));
+            }
+
+            for (int i = in.readInt(); i > 0; i--) {
+                stats.recordOrders(readString(in), in.readLong());
+            }
+
+            for (int i = in.readInt(); i > 0; i--) {
+                RatingHistogram histogram = new RatingHistogram();
+                ratings.put(readString(in), histogram);
+
+                for (int rating = RatingHistogram.MIN_RATING; rating <= RatingHistogram.MAX_RATING; rating++) {
+                    long count = in.readLong();
+
+                    histogram.add(rating, count);
+                    allRatings.add(rating, count);
+                }
+            }
+        } catch (RuntimeException e) {
+            // a snapshot that refers to something it does not hold
+            throw new IOException(String.format("Snapshot File %s Is Corrupt", stateFile), e);
+        }
+
+        return nextProductId(loadedProducts);
+    }
+
+    private ProductOrder readOrder(DataInputStream in) throws IOException {
+        String orderNumber = readString(in);
+        Product product = getProduct(readString(in));
+        Customer customer = getCustomer(readString(in));
+        String productOptions = readString(in);
+
+        return new ProductOrder(orderNumber, product, customer, productOptions, product.parseOptions(productOptions));
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private Customer getCustomer(String customerId) {
+        Customer customer = customers.get(customerId);
+
+        if (customer == null) {
+            throw new Customer.NotFoundException(customerId);
+        }
+
+        return customer;
+    }
+
+    /**
+     * Stops taking snapshots, forces every mutation recorded in the journal and
+     * every shipped order to disk, and closes them. This does nothing if the
+     * system has no state directory.
+     *
+     * @throws UncheckedIOException If the journal or the shipped orders could not
+     *                              be written.
+     */
+    @Override
+    public void close() {
+        if (journal == null) {
+            return;
+        }
+
+        synchronized (snapshotLock) {
+            closed = true;
+            snapshotLock.notifyAll();
+        }
+
+        try {
+            snapshotter.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        journal.close();
+        shippedOrders.close();
+    }
+
+    private String generateOrderNumber() {
+        return Integer.toString(orderNumbers.next());
+    }
+
+    private String generateCustomerId() {
+        return Integer.toString(customerIds.next());
+    }
+
+    private String generateProductId() {
+        return Integer.toString(productIds.next());
+    }
+
+    /**
+     * Prints out all of the products in the system.
+     */
+    public void printAllProducts() {
+        ReportWriter out = new ReportWriter(System.out);
+        for (Product p : products.snapshot().getAll()) {
+            p.render(out);
+        }
+
+        out.flush();
+    }
+
+    /**
+     * Prints out all of the products in the system that are books.
+     */
+    public void printAllBooks() {
+        ReportWriter out = new ReportWriter(System.out);
+        for (Book b : products.snapshot().getByType(Book.class)) {
+            b.render(out);
+        }
+
+        out.flush();
+    }
+
+    /**
+     * Prints out all of the products in the system that are shoes.
+     */
+    public void printAllShoes() {
+        ReportWriter out = new ReportWriter(System.out);
+        for (Shoes s : products.snapshot().getByType(Shoes.class)) {
+            s.render(out);
+        }
+
+        out.flush();
+    }
+
+    /**
+     * Prints all active orders in the system.
+     */
+    public void printAllOrders() {
+        ReportWriter out = new ReportWriter(System.out);
+        for (int orderNumber : orders.sortedKeys()) {
+            printIfPresent(out, orders.get(orderNumber));
+        }
+
+        out.flush();
+    }
+
+    /**
+     * Prints all shipped orders in the system. The orders are streamed from the
+     * shipped order archive, so they are never all in memory at once.
+     */
+    public void printAllShippedOrders() {
+        ReportWriter out = new ReportWriter(System.out);
+        for (Iterator<ProductOrder> it = shippedOrders.iterator(); it.hasNext();) {
+            it.next().render(out);
+        }
+
+        out.flush();
+    }
+
+    /**
+     * Prints all the customers in the system.
+     */
+    public void printCustomers() {
+        ReportWriter out = new ReportWriter(System.out);
+        for (Customer c : customers) {
+            c.render(out);
+        }
+
+        out.flush();
+    }
+
+    /**
+     * Prints out the order history of a customer. This will print out all active
+     * orders and shipped orders, if any.
+     *
+     * @param customerId The customer ID of the customer whose order history is to
+     *                   be printed.
+     *
+     * @throws Customer.NotFoundException If the customer with the given ID does not
+     *                                    exist.
+     */
+    public void printOrderHistory(String customerId) {
+        if (!customers.contains(customerId)) {
+            throw new Customer.NotFoundException(customerId);
+        }
+
+        ReportWriter out = new ReportWriter(System.out);
+
+        out.append("Current Orders of Customer ").append(customerId).append(System.lineSeparator());
+        for (String orderNumber : orderHistory.getActive(customerId, null, Integer.MAX_VALUE)) {
+            printIfPresent(out, orders.get(Identifiers.parse(orderNumber)));
+        }
+
+        out.append("\nShipped Orders of Customer ").append(customerId).append(System.lineSeparator());
+        for (Iterator<ProductOrder> it = shippedOrders.iterator(customerId, null); it.hasNext();) {
+            it.next().render(out);
+        }
+
+        out.flush();
+    }
+
+    /**
+     * Getter for a product.
+     *
+     * @param productId The product ID of the product.
+     * @return The product.
+     *
+     * @throws Product.NotFoundException If the product ID is not found.
+     */
+    public Product getProduct(String productId) {
+        Product product = products.snapshot().get(productId);
+
+        if (product == null) {
+            throw new Product.NotFoundException(productId);
+        }
+
+        return product;
+    }
+
+    /**
+     * Getter for all of the products in the system, in the order they were added.
+     *
+     * @return All of the products in the system.
+     */
+    public Iterable<Product> getAllProducts() {
+        return products.snapshot().getAll();
+    }
+
+    /**
+     * Getter for all of the customers in the system, in the order they were
+     * created or last sorted.
+     *
+     * @return A new list with all of the customers in the system.
+     */
+    public List<Customer> getCustomers() {
+        List<Customer> list = new ArrayList<>(customers.size());
+        for (Customer c : customers) {
+            list.add(c);
+        }
+
+        return list;
+    }
+
+    /**
+     * Getter for the items in a customers cart.
+     *
+     * @param customerId The customer ID of the customer who's cart is returned.
+     * @return A new list with the items in the cart.
+     *
+     * @throws Customer.NotFoundException If the customer ID is not found.
+     */
+    public List<CartItem> getCart(String customerId) {
+        Customer customer = customers.get(customerId);
+
+        if (customer == null) {
+            throw new Customer.NotFoundException(customerId);
+        }
+
+        Lock lock = customerLocks.get(customerId);
+        lock.lock();
+        try {
+            return new ArrayList<>(customer.getCart().getItems());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Getter for the best selling products, based on how many items a product has
+     * been ordered through the system.
+     *
+     * @param limit The maximum number of products to return.
+     * @return The sales of the best selling products, best selling first.
+     */
+    public List<SalesRanking.Sales> getTopSales(int limit) {
+        return stats.getTop(limit);
+    }
+
+    /**
+     * Getter for the number of times a product was given each rating.
+     *
+     * @param productId The product ID of the product.
+     * @return A new array with the number of times the product was given each
+     *         rating, indexed by the rating minus {@link RatingHistogram#MIN_RATING}.
+     *
+     * @throws Product.NotFoundException If the product ID is not found.
+     */
+    public long[] getRatingCounts(String productId) {
+        getProduct(productId);
+
+        RatingHistogram histogram = ratings.get(productId);
+        long[] counts = new long[RatingHistogram.MAX_RATING - RatingHistogram.MIN_RATING + 1];
+
+        for (int i = 0; histogram != null && i < counts.length; i++) {
+            counts[i] = histogram.getCount(i + RatingHistogram.MIN_RATING);
+        }
+
+        return counts;
+    }
+
+    /**
+     * Getter for a page of the active orders of a customer, sorted by their order
+     * number. Long histories can be read by passing the order number of the last
+     * order of a page as the cursor for the next page.
+     *
+     * @param customerId The customer ID of the customer whose orders are to be
+     *                   returned.
+     * @param cursor     The order number of the last order of the previous page,
+     *                   or null to start from the first order.
+     * @param limit      The maximum number of orders to return.
+     * @return The active orders of the page, which is empty once there are no
+     *         orders after the cursor.
+     *
+     * @throws Customer.NotFoundException If the customer with the given ID does not
+     *                                    exist.
+     */
+    public List<ProductOrder> getActiveOrders(String customerId, String cursor, int limit) {
+        if (!customers.contains(customerId)) {
+            throw new Customer.NotFoundException(customerId);
+        }
+
+        List<ProductOrder> page = new ArrayList<>();
+        for (String orderNumber : orderHistory.getActive(customerId, cursor, limit)) {
+            addIfPresent(page, orders.get(Identifiers.parse(orderNumber)));
+        }
+
+        return page;
+    }
+
+    /**
+     * Getter for a page of the shipped orders of a customer, sorted by their order
+     * number. Long histories can be read by passing the order number of the last
+     * order of a page as the cursor for the next page.
+     *
+     * @param customerId The customer ID of the customer whose orders are to be
+     *                   returned.
+     * @param cursor     The order number of the last order of the previous page,
+     *                   or null to start from the first order.
+     * @param limit      The maximum number of orders to return.
+     * @return The shipped orders of the page, which is empty once there are no
+     *         orders after the cursor.
+     *
+     * @throws Customer.NotFoundException If the customer with the given ID does not
+     *                                    exist.
+     */
+    public List<ProductOrder> getShippedOrders(String customerId, String cursor, int limit) {
+        if (!customers.contains(customerId)) {
+            throw new Customer.NotFoundException(customerId);
+        }
+
+        if (limit <= 0) {
+            throw new IllegalArgumentException(String.format("Invalid Page Limit: %d", limit));
+        }
+
+        List<ProductOrder> page = new ArrayList<>();
+        Iterator<ProductOrder> it = shippedOrders.iterator(customerId, cursor);
+        while (page.size() < limit && it.hasNext()) {
+            page.add(it.next());
+        }
+
+        return page;
+    }
+
+    /**
+     * Orders a specified product for a specified customer with the given product
+     * options. Validates product stock and options, exceptions are thrown if
+     * neither is valid.
+     *
+     * @param productId      The product ID of the product to be ordered.
+     * @param customerId     The customer ID of the customer who is ordering the
+     *                       product.
+     * @param productOptions The product options to be used when ordering the
+     *                       product.
+     * @return The order number of the order.
+     *
+     * @throws Product.NotFoundException       If the product ID is not found.
+     * @throws Customer.NotFoundException      If the customer ID is not found.
+     * @throws Product.InvalidOptionsException If the product options are invalid.
+     * @throws Product.NoStockException        If the product is out of stock.
+     */
+    public String orderProduct(String productId, String customerId, String productOptions) {
+        Product product = products.snapshot().get(productId);
+        Customer customer = customers.get(customerId);
+
+        if (product == null) {
+            throw new Product.NotFoundException(productId);
+        }
+
+        if (customer == null) {
+            throw new Customer.NotFoundException(customerId);
+        }
+
+        int variant = product.parseOptions(productOptions);
+
+        if (variant == Product.INVALID_VARIANT) {
+            throw new Product.InvalidOptionsException(product, productOptions);
+        }
+
+        if (!product.tryReserve(variant)) {
+            throw new Product.NoStockException(product);
+        }
+
+        String orderNumber = generateOrderNumber();
+        long sequence;
+
+        try {
+            sequence = record(Journal.Type.ORDER, orderNumber, productId, customerId, productOptions);
+        } catch (RuntimeException e) {
+            product.release(variant);
+            throw e;
+        }
+
+        commit(sequence, () -> publishOrder(orderNumber, product, customer, productOptions, variant),
+                () -> product.release(variant));
+        return orderNumber;
+    }
+
+    // Places an order whose stock is already reserved. Orders are only published
+    // once their record is committed, so an order whose commit failed is never
+    // seen, shipped, or counted.
+    private void publishOrder(String orderNumber, Product product, Customer customer, String productOptions,
+            int variant) {
+        ProductOrder order = new ProductOrder(orderNumber, product, customer, productOptions, variant);
+
+        // record the sale and index the order before publishing it, so it can be
+        // shipped or cancelled as soon as it is visible
+        stats.recordOrder(product.getId());
+        orderHistory.addActive(customer.getId(), orderNumber);
+        orders.put(Identifiers.parse(orderNumber), order);
+    }
+
+    /**
+     * Creates a new customer and saves their data to the system. Validates inputs,
+     * and throws an exception is they cannot be validated.
+     *
+     * @param name    The name of the customer.
+     * @param address The address of the customer.
+     * @return The customer ID of the new customer.
+     *
+     * @throws Customer.InvalidNameException    If the name is invalid.
+     * @throws Customer.InvalidAddressException If the address is invalid.
+     */
+    public String createCustomer(String name, String address) {
+        if (name == null || name.equals("")) {
+            throw new Customer.InvalidNameException();
+        }
+
+        if (address == null || address.equals("")) {
+            throw new Customer.InvalidAddressException();
+        }
+
+        String customerId = generateCustomerId();
+        Customer customer = new Customer(customerId, name, address);
+
+        commit(record(Journal.Type.CUSTOMER, customerId, name, address), () -> customers.add(customer), NOTHING);
+        return customerId;
+    }
+
+    /**
+     * Ships an active order. This will remove the order from the active orders and
+     * append it to the shipped order archive. This cannot be used with
+     * orders that were cancelled or have already been shipped. If the order cannot
+     * be found, an exception is thrown.
+     *
+     * @param orderNumber The order number of the order to be shipped.
+     * @return An instance of the shipped order.
+     *
+     * @throws ProductOrder.NotFoundException If the order cannot be found.
+     */
+    public ProductOrder shipOrder(String orderNumber) {
+        int number = Identifiers.parse(orderNumber);
+        ProductOrder order = orders.remove(number); // claims the order, only one thread can remove it
+
+        if (order == null) {
+            throw new ProductOrder.NotFoundException(orderNumber);
+        }
+
+        shipLock.readLock().lock();
+        try {
+            long sequence;
+
+            try {
+                sequence = record(Journal.Type.SHIP, orderNumber);
+            } catch (RuntimeException e) {
+                orders.put(number, order);
+                throw e;
+            }
+
+            hold(shipLock.readLock()); // a batch archives the order once it is committed
+
+            // appended after the shipment is committed, as an archived order can no
+            // longer be taken back
+            commit(sequence, () -> {
+                shippedOrders.add(order);
+                orderHistory.ship(order.getCustomerId(), orderNumber);
+            }, () -> orders.put(number, order));
+        } finally {
+            shipLock.readLock().unlock();
+        }
+
+        return order;
+    }
+
+    /**
+     * Cancels an active order. This will remove the order from the active orders.
+     * This will not work for orders that have already been cancelled or have
+     * shipped. If the order is not found, this will throw an exception.
+     *
+     * @param orderNumber The order number of the order to be cancelled.
+     *
+     * @throws ProductOrder.NotFoundException If the order cannot be found.
+     */
+    public void cancelOrder(String orderNumber) {
+        int number = Identifiers.parse(orderNumber);
+        ProductOrder order = orders.remove(number); // claims the order, only one thread can remove it
+
+        if (order == null) {
+            throw new ProductOrder.NotFoundException(orderNumber);
+        }
+
+        long sequence;
+
+        try {
+            sequence = record(Journal.Type.CANCEL, orderNumber);
+        } catch (RuntimeException e) {
+            orders.put(number, order);
+            throw e;
+        }
+
+        // committed before the stock is released, so an order that takes the
+        // released stock is always recorded after the cancellation
+        commit(sequence, () -> {
+            order.cancelOrder();
+
+            orderHistory.cancel(order.getCustomerId(), orderNumber);
+
+            stats.recordCancel(order.getProductId());
+        }, () -> orders.put(number, order));
+    }
+
+    /**
+     * Sorts products by their price, in ascending order.
+     */
+    public void printByPrice() {
+        printByPrice(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Sorts products by their price, in ascending order. Only a single page of the
+     * products priced within the given range is printed.
+     *
+     * @param minPrice The lowest price to include.
+     * @param maxPrice The highest price to include.
+     * @param offset   The number of matching products to skip.
+     * @param limit    The maximum number of products to print.
+     */
+    public void printByPrice(double minPrice, double maxPrice, int offset, int limit) {
+        ReportWriter out = new ReportWriter(System.out);
+        for (Product p : products.snapshot().getByPrice(minPrice, maxPrice, offset, limit)) {
+            p.render(out);
+        }
+
+        out.flush();
+    }
+
+    /**
+     * Sorts products by their name, in alphabetical order.
+     */
+    public void printByName() {
+        printByName("", 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Sorts products by their name, in alphabetical order. Only a single page of
+     * the products whose name starts with the given prefix is printed.
+     *
+     * @param prefix The prefix of the name to include.
+     * @param offset The number of matching products to skip.
+     * @param limit  The maximum number of products to print.
+     */
+    public void printByName(String prefix, int offset, int limit) {
+        ReportWriter out = new ReportWriter(System.out);
+        for (Product p : products.snapshot().getByName(prefix, offset, limit)) {
+            p.render(out);
+        }
+
+        out.flush();
+    }
+
+    /**
+     * Sorts customers by their name, in alphabetical order.
+     */
+    public void sortCustomersByName() {
+        customers.sortByName();
+    }
+
+    /**
+     * Prints all books in the system that were written by a specific author. This
+     * will also print them in ascending order based on the year they were
+     * published.
+     *
+     * @param author The author to search for.
+     */
+    public void printBooksByAuthor(String author) {
+        ReportWriter out = new ReportWriter(System.out);
+        for (Book b : products.snapshot().getBooksByAuthor(author)) {
+            b.render(out);
+        }
+
+        out.flush();
+    }
+
+    /**
+     * Prints all books in the system that were written by a specific author,
+     * ignoring case. The books are grouped by the exact spelling of the author,
+     * and each group is printed in ascending order based on the year they were
+     * published.
+     *
+     * @param author The author to search for, in any case.
+     */
+    public void printBooksByAuthorIgnoreCase(String author) {
+        ReportWriter out = new ReportWriter(System.out);
+        for (Book b : products.snapshot().getBooksByAuthorIgnoreCase(author)) {
+            b.render(out);
+        }
+
+        out.flush();
+    }
+
+    /**
+     * Prints all books in the system whose author starts with a specific prefix,
+     * ignoring case. The books are grouped by author in alphabetical order, and
+     * each author's books are printed in ascending order based on the year they
+     * were published.
+     *
+     * @param prefix The prefix of the author to search for.
+     */
+    public void printBooksByAuthorPrefix(String prefix) {
+        ReportWriter out = new ReportWriter(System.out);
+        for (Book b : products.snapshot().getBooksByAuthorPrefix(prefix)) {
+            b.render(out);
+        }
+
+        out.flush();
+    }
+
+    /**
+     * Adds an item to a customers cart with specific options. Options are validated
+     * and an exception is thrown if they are not valid. If the item is not in
+     * stock, an exception is also thrown. Once everything is validated, the item is
+     * added to the customer's cart.
+     *
+     * @param productId      The product ID of the item to be added.
+     * @param customerId     The customer ID of the customer who is adding the item.
+     * @param productOptions The product options to be used when adding the item.
+     *
+     * @throws Product.NotFoundException       If the product ID is not found.
+     * @throws Product.InvalidOptionsException If the product options are invalid.
+     * @throws Product.NoStockException        If the product is not in stock.
+     * @throws Customer.NotFoundException      If the customer ID is not found.
+     */
+    public void addToCart(String productId, String customerId, String productOptions) {
+        Product product = products.snapshot().get(productId);
+        Customer customer = customers.get(customerId);
+
+        if (product == null) {
+            throw new Product.NotFoundException(productId);
+        }
+
+        if (customer == null) {
+            throw new Customer.NotFoundException(customerId);
+        }
+
+        int variant = product.parseOptions(productOptions);
+
+        if (variant == Product.INVALID_VARIANT) {
+            throw new Product.InvalidOptionsException(product, productOptions);
+        }
+
+        if (!product.hasStock(variant)) {
+            throw new Product.NoStockException(product);
+        }
+
+        CartItem item = new CartItem(product, productOptions, variant);
+        long sequence;
+
+        Lock lock = customerLocks.get(customerId);
+        lock.lock();
+        try {
+            // recorded under the cart lock, so cart changes and checkouts of a customer
+            // are journaled in the order they were applied
+            sequence = record(Journal.Type.CART_ADD, customerId, productId, productOptions);
+            customer.getCart().getItems().add(item);
+        } finally {
+            lock.unlock();
+        }
+
+        // outside the cart lock, so the customer's cart is not held while forcing
+        commit(sequence, NOTHING, () -> {
+            lock.lock();
+            try {
+                customer.getCart().getItems().remove(item);
+            } finally {
+                lock.unlock();
+            }
+        });
+    }
+
+    /**
+     * Removes an item from a customers cart. If the item is not in the cart, an
+     * exception is thrown.
+     *
+     * @param productId  The product ID of the item to be removed.
+     * @param customerId The customer ID of the customer who is removing the item.
+     *
+     * @throws Product.NotFoundException  If the product ID is not found.
+     * @throws Customer.NotFoundException If the customer ID is not found.
+     */
+    public void removeFromCart(String productId, String customerId) {
+        Product product = products.snapshot().get(productId);
+        Customer customer = customers.get(customerId);
+
+        if (product == null) {
+            throw new Product.NotFoundException(productId);
+        }
+
+        if (customer == null) {
+            throw new Customer.NotFoundException(customerId);
+        }
+
+        List<CartItem> items = customer.getCart().getItems();
+        CartItem removed;
+        int index;
+        long sequence;
+
+        Lock lock = customerLocks.get(customerId);
+        lock.lock();
+        try {
+            index = indexOf(items, productId);
+
+            if (index < 0) {
+                throw new Product.NotFoundException(productId);
+            }
+
+            sequence = record(Journal.Type.CART_REMOVE, customerId, productId);
+            removed = items.remove(index);
+        } finally {
+            lock.unlock();
+        }
+
+        // outside the cart lock, so the customer's cart is not held while forcing
+        commit(sequence, NOTHING, () -> {
+            lock.lock();
+            try {
+                items.add(Math.min(index, items.size()), removed);
+            } finally {
+                lock.unlock();
+            }
+        });
+    }
+
+    // Finds the position of the first item of a cart for a product, or -1 if the
+    // cart does not hold the product.
+    private static int indexOf(List<CartItem> items, String productId) {
+        for (int i = 0; i < items.size(); i++) {
+            if (items.get(i).getProduct().getId().equals(productId)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Prints a customers cart.
+     *
+     * @param customerId The customer ID of the customer who's cart is to be
+     *                   printed.
+     *
+     * @throws Customer.NotFoundException If the customer ID is not found.
+     */
+    public void printCart(String customerId) {
+        Customer customer = customers.get(customerId);
+
+        if (customer == null) {
+            throw new Customer.NotFoundException(customerId);
+        }
+
+        ReportWriter out = new ReportWriter(System.out);
+        Lock lock = customerLocks.get(customerId);
+        lock.lock();
+        try {
+            for (CartItem item : customer.getCart().getItems()) {
+                out.append("\nCustomer Id: ").appendRightAligned(customerId, 3)
+                        .append(" Product Id: ").appendRightAligned(item.getProduct().getId(), 3)
+                        .append(" Product Name: ").appendRightAligned(item.getProduct().getName(), 12)
+                        .append(" Options: ").appendRightAligned(item.getOptions(), 8);
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        out.flush(); // written once the cart is unlocked
+    }
+
+    /**
+     * Orders all the items from a customers cart, clearing out their cart. The
+     * checkout is all-or-nothing: stock is reserved for every item first, and if
+     * any item is out of stock, every reservation is released, an exception is
+     * thrown, and the cart is left as it was. Only once every item is reserved are
+     * the orders placed and the cart cleared.
+     *
+     * Stock is reserved in ascending order of product ID and variant. When
+     * concurrent checkouts compete for the last units of the same products, they
+     * all try them in the same order, so one of them wins every unit it needs
+     * instead of each taking some and all failing.
+     *
+     * @param customerId The customer ID of the customer who's cart is to be
+     *                   ordered.
+     * @return The order numbers of the orders placed, in the order of the cart.
+     *
+     * @throws Customer.NotFoundException If the customer ID is not found.
+     * @throws Product.NoStockException   If any product is not in stock.
+     */
+    public List<String> orderItems(String customerId) {
+        Customer customer = customers.get(customerId);
+
+        if (customer == null) {
+            throw new Customer.NotFoundException(customerId);
+        }
+
+        List<String> orderNumbers;
+        CartItem[] checkedOut;
+        long sequence;
+
+        Lock cartLock = customerLocks.get(customerId);
+        cartLock.lock();
+        try {
+            List<CartItem> items = customer.getCart().getItems();
+            CartItem[] reserveOrder = items.toArray(new CartItem[0]);
+            Arrays.sort(reserveOrder, RESERVE_ORDER);
+
+            for (int i = 0; i < reserveOrder.length; i++) {
+                Product product = reserveOrder[i].getProduct();
+
+                if (!product.tryReserve(reserveOrder[i].getVariant())) {
+                    while (--i >= 0) {
+                        reserveOrder[i].getProduct().release(reserveOrder[i].getVariant());
+                    }
+
+                    throw new Product.NoStockException(product);
+                }
+            }
+
+            orderNumbers = new ArrayList<>(items.size());
+            String[] fields = new String[1 + 3 * items.size()];
+            fields[0] = customerId;
+
+            for (CartItem item : items) {
+                String orderNumber = generateOrderNumber();
+
+                fields[orderNumbers.size() * 3 + 1] = orderNumber;
+                fields[orderNumbers.size() * 3 + 2] = item.getProduct().getId();
+                fields[orderNumbers.size() * 3 + 3] = item.getOptions();
+                orderNumbers.add(orderNumber);
+            }
+
+            try {
+                sequence = record(Journal.Type.CHECKOUT, fields); // one record, so a checkout replays all or nothing
+            } catch (RuntimeException e) {
+                for (CartItem item : reserveOrder) {
+                    item.getProduct().release(item.getVariant());
+                }
+
+                throw e;
+            }
+
+            checkedOut = items.toArray(new CartItem[0]);
+            items.clear();
+        } finally {
+            cartLock.unlock();
+        }
+
+        // outside the cart lock, so the customer's cart is not held while forcing
+        commit(sequence, () -> {
+            for (int i = 0; i < checkedOut.length; i++) {
+                CartItem item = checkedOut[i];
+
+                publishOrder(orderNumbers.get(i), item.getProduct(), customer, item.getOptions(), item.getVariant());
+            }
+        }, () -> {
+            cartLock.lock();
+            try {
+                // items added since the checkout stay after the items put back
+                customer.getCart().getItems().addAll(0, Arrays.asList(checkedOut));
+            } finally {
+                cartLock.unlock();
+            }
+
+            for (CartItem item : checkedOut) {
+                item.getProduct().release(item.getVariant());
+            }
+        });
+
+        return orderNumbers;
+    }
+
+    /**
+     * Prints out statistics for how many items a product has been ordered through
+     * the system.
+     */
+    public void printStats() {
+        printStats(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Prints out statistics for the best selling products, based on how many items
+     * a product has been ordered through the system.
+     *
+     * @param limit The maximum number of products to print.
+     */
+    public void printStats(int limit) {
+        ProductCatalog catalog = products.snapshot();
+        ReportWriter out = new ReportWriter(System.out);
+
+        try {
+            for (SalesRanking.Sales stat : stats.getTop(limit)) {
+                String productId = stat.getProductId();
+                int count = stat.getCount();
+
+                out.append("\nName: ").appendLeftAligned(catalog.get(productId).getName(), 20)
+                        .append(" ID: ").appendRightAligned(productId, 3).append(" Ordered: ").appendNumber(count);
+            }
+        } finally {
+            out.flush(); // the rows before a product that is missing are still printed
+        }
+    }
+
+    /**
+     * Adds a rating to a specific rating. If the rating is not found, an exception
+     * is thrown.
+     *
+     * @param productId The product ID of the product being rated.
+     * @param rating    The rating to be added.
+     *
+     * @throws Product.NotFoundException      If the product ID is not found.
+     * @throws Product.InvalidRatingException If the rating is invalid.
+     */
+    public void addRating(String productId, int rating) {
+        Product product = products.snapshot().get(productId);
+
+        if (product == null) {
+            throw new Product.NotFoundException(productId);
+        }
+
+        if (rating < 1 || rating > 5) {
+            throw new Product.InvalidRatingException(product, rating);
+        }
+
+        commit(record(Journal.Type.RATING, productId, Integer.toString(rating)), () -> addRatings(productId, rating, 1),
+                NOTHING);
+    }
+
+    private void addRatings(String productId, int rating, long count) {
+        ratings.computeIfAbsent(productId, id -> new RatingHistogram()).add(rating, count);
+        allRatings.add(rating, count);
+    }
+
+    /**
+     * Prints out the ratings for a specified product.
+     *
+     * @param productId The product ID of the product being rated.
+     *
+     * @throws Product.NotFoundException If the product ID is not found.
+     */
+    public void printRatingsByProductId(String productId) {
+        Product product = products.snapshot().get(productId);
+
+        if (product == null) {
+            throw new Product.NotFoundException(productId);
+        }
+
+        RatingHistogram histogram = ratings.get(productId);
+
+        System.out.println(String.format("\nProduct Id: %3s Product Name: %12s", productId, product.getName()));
+        for (int i = RatingHistogram.MIN_RATING; i <= RatingHistogram.MAX_RATING; i++) {
+            if (allRatings.getCount(i) == 0) {
+                continue; // only list the ratings that any product has been given
+            }
+
+            long count = histogram == null ? 0 : histogram.getCount(i);
+
+            System.out.print(String.format("%dx %s", count, new String(new char[i]).replace("\0", "*")));
+            System.out.println();
+        }
+    }
+
+    /**
+     * Prints out the ratings for all products in a specified category.
+     *
+     * @param category  The category of the products being rated.
+     * @param threshold The minimum number of ratings required for a product to be
+     */
+    public void printRatingsByCategory(Product.Category category, int threshold) {
+        for (Product p : products.snapshot().getByCategory(category)) {
+            RatingHistogram histogram = ratings.get(p.getId());
+
+            if (histogram == null || histogram.getTotal() <= 0) {
+                continue;
+            }
+
+            double average = histogram.getAverage();
+
+            if (average >= threshold) {
+                System.out.print(String.format("\nProduct Id: %3s Product Name: %12s Average Rating: %.2f",
+                        p.getId(), p.getName(), average));
+            }
+        }
+    }
+
+    /**
+     * Exports the ratings of every product for auditing. Each line contains the
+     * product ID, a rating, and the number of times the product was given that
+     * rating, separated by commas. Ratings a product was never given are omitted.
+     *
+     * @param writer The writer to export the ratings to.
+     *
+     * @throws IOException If the ratings could not be written.
+     */
+    public void exportRatings(Writer writer) throws IOException {
+        Map<String, RatingHistogram> sortedRatings = new TreeMap<>(Identifiers.ORDER);
+        sortedRatings.putAll(ratings);
+
+        for (Entry<String, RatingHistogram> entry : sortedRatings.entrySet()) {
+            for (int i = RatingHistogram.MIN_RATING; i <= RatingHistogram.MAX_RATING; i++) {
+                long count = entry.getValue().getCount(i);
+
+                if (count > 0) {
+                    writer.write(String.format("%s,%d,%d%n", entry.getKey(), i, count));
+                }
+            }
+        }
+
+        writer.flush();
+    }
+
+    /**
+     * Exports every product of the catalog, with its current stock, to a binary
+     * catalog file. A system whose state directory holds the file as catalog.bin
+     * loads its catalog from it instead of products.txt.
+     *
+     * @param file The file to export the catalog to.
+     *
+     * @throws IOException If the catalog could not be written.
+     * @see BinaryCatalog
+     */
+    public void exportCatalog(Path file) throws IOException {
+        BinaryCatalog.write(products.snapshot(), file);
+    }
+
+    /**
+     * Imports customers, orders, and ratings in bulk from a CSV file. Rows are
+     * validated in parallel and applied in batches, and each batch waits for the
+     * journal only once. Rows that cannot be imported are rejected without
+     * stopping the import. See {@link BulkImporter} for the format of the file.
+     *
+     * @param file The CSV file to import.
+     * @return The number of rows that were imported, and the problems with every
+     *         row that was rejected.
+     *
+     * @throws IOException If the file could not be read.
+     */
+    public BulkImporter.Result importRecords(Path file) throws IOException {
+        Map<String, Customer> keys = new HashMap<>(); // the customers imported with a key
+
+        return new BulkImporter(productId -> products.snapshot().get(productId)).load(file,
+                (rows, rejected) -> applyImport(rows, rejected, keys));
+    }
+
+    // Applies a batch of imported rows, committing the journal once for the whole
+    // batch. Every row is recorded first and only applied once the commit
+    // returned, so a failed commit leaves nothing of the batch behind. The keys
+    // map to the customers imported so far, which are only added to the system
+    // once their batch is committed. Customers are applied before the orders of
+    // their batch, so an order only finds a key of its own batch if the key is
+    // defined on an earlier line, as it would if the batch were split.
+    private void applyImport(List<BulkImporter.Row> rows, List<BulkImporter.Problem> rejected,
+            Map<String, Customer> keys) {
+        Map<String, Long> lines = new HashMap<>(); // the line of every key defined in this batch
+        List<Runnable> applied = new ArrayList<>(rows.size());
+        List<BulkImporter.Row> reserved = new ArrayList<>();
+        long sequence = 0;
+
+        try {
+            for (BulkImporter.Row row : rows) {
+                switch (row.getKind()) {
+                case CUSTOMER:
+                    String key = row.getCustomerKey();
+
+                    if (key != null && keys.containsKey(key)) {
+                        rejected.add(row.reject(String.format("Duplicate Customer Key: %s", key)));
+                        continue;
+                    }
+
+                    Customer newCustomer = new Customer(generateCustomerId(), row.getName(), row.getAddress());
+                    sequence = record(Journal.Type.CUSTOMER, newCustomer.getId(), row.getName(), row.getAddress());
+
+                    if (key != null) {
+                        keys.put(key, newCustomer);
+                        lines.put(key, row.getLine());
+                    }
+
+                    applied.add(() -> customers.add(newCustomer));
+                    break;
+                case ORDER:
+                    Product product = row.getProduct();
+                    Long line = lines.get(row.getCustomerId());
+                    Customer customer = line == null || line < row.getLine() ? keys.get(row.getCustomerId()) : null;
+
+                    if (customer == null) {
+                        customer = customers.get(row.getCustomerId());
+                    }
+
+                    if (customer == null) {
+                        rejected.add(row.reject(new Customer.NotFoundException(row.getCustomerId()).getMessage()));
+                        continue;
+                    }
+
+                    if (!product.tryReserve(row.getVariant())) {
+                        rejected.add(row.reject(new Product.NoStockException(product).getMessage()));
+                        continue;
+                    }
+
+                    reserved.add(row);
+
+                    String orderNumber = generateOrderNumber();
+                    Customer orderer = customer;
+                    sequence = record(Journal.Type.ORDER, orderNumber, product.getId(), customer.getId(),
+                            row.getProductOptions());
+
+                    applied.add(() -> publishOrder(orderNumber, product, orderer, row.getProductOptions(),
+                            row.getVariant()));
+                    break;
+                case RATING:
+                    sequence = record(Journal.Type.RATING, row.getProduct().getId(), Integer.toString(row.getRating()),
+                            Long.toString(row.getCount()));
+
+                    applied.add(() -> addRatings(row.getProduct().getId(), row.getRating(), row.getCount()));
+                    break;
+                }
+            }
+        } catch (RuntimeException e) {
+            release(reserved);
+            throw e;
+        }
+
+        commit(sequence, () -> {
+            for (Runnable apply : applied) {
+                apply.run();
+            }
+        }, () -> release(reserved));
+    }
+
+    private static void release(List<BulkImporter.Row> reserved) {
+        for (BulkImporter.Row row : reserved) {
+            row.getProduct().release(row.getVariant());
+        }
+    }
+
+    private static void printIfPresent(ReportWriter out, ProductOrder order) {
+        if (order != null) { // the order may have been shipped or cancelled since it was listed
+            order.render(out);
+        }
+    }
+
+    private static void addIfPresent(List<ProductOrder> page, ProductOrder order) {
+        if (order != null) { // the order may have been shipped or cancelled since it was listed
+            page.add(order);
+        }
+    }
+
+    /**
+     * Utility method to find the type of a product based off of its productId. If a
+     * product cannot be found, it throws an exception.
+     *
+     * @param productId The productId of the product to find the type of.
+     * @return The type of the product.
+     *
+     * @throws Product.NotFoundException If the product cannot be found.
+     */
+    public Class<? extends Product> getProductType(String productId) {
+        Product product = products.snapshot().get(productId);
+        if (product == null) {
+            throw new Product.NotFoundException(productId);
+        }
+
+        return product.getClass();
+    }
+
+    // The mutations a thread made since it began a batch, waiting for the batch to
+    // be committed, and the locks it keeps held until then.
+    private static class Batch {
+        private final List<Runnable> applies = new ArrayList<>();
+        private final List<Runnable> undos = new ArrayList<>();
+        private final List<Lock> held = new ArrayList<>();
+    }
+}
@@ -0,0 +1,218 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class allocates the unique identifiers generated by the ECommerceSystem,
+ * such as order numbers and customer IDs. Instead of having every thread
+ * increment a single shared counter, the allocator hands out blocks of
+ * identifiers. Each thread draws identifiers from the block of its own stripe,
+ * and only touches the shared counter when that block runs out, so allocation
+ * scales with the number of threads.
+ *
+ * A single thread always draws from the same stripe, so it receives
+ * consecutive identifiers. Identifiers left over in a block are never handed
+ * out, so identifiers are unique but may have gaps when several threads
+ * allocate at once.
+ *
+ * The allocator can persist a high-water mark to a file. Before handing out
+ * any identifier at or above the mark, the mark is moved further ahead and
+ * forced to disk, so identifiers are never reused after a restart, even after
+ * a crash of the operating system.
+ *
+ * @author Ali Rizvi (501039655)
+ * @see ECommerceSystem
+ */
+public class IdAllocator {
+    private static final int DEFAULT_BLOCK_SIZE = 64;
+    private static final int BLOCKS_PER_LEASE = 64; // blocks covered by every write of the high-water mark
+
+    private final AtomicLong next;
+    private final int blockSize;
+
+    // Each stripe packs the next identifier of its block in the high 32 bits and
+    // the end of its block in the low 32 bits, so both change in a single CAS.
+    private final AtomicLongArray stripes;
+
+    private final Path highWaterFile;
+    private volatile long highWater;
+
+    /**
+     * Constructs a new allocator that is only kept in memory.
+     *
+     * @param first The first identifier to allocate.
+     */
+    public IdAllocator(int first) {
+        this(first, DEFAULT_BLOCK_SIZE, null);
+    }
+
+    /**
+     * Constructs a new allocator that persists its high-water mark to a file. If
+     * the file already exists, allocation resumes from the mark stored in it.
+     *
+     * @param first         The first identifier to allocate, if there is no
+     *                      high-water mark yet.
+     * @param highWaterFile The file to persist the high-water mark to.
+     *
+     * @throws UncheckedIOException If the high-water mark could not be read.
+     */
+    public IdAllocator(int first, Path highWaterFile) {
+        this(first, DEFAULT_BLOCK_SIZE, highWaterFile);
+    }
+
+    /**
+     * Constructs a new allocator with a specific block size.
+     *
+     * @param first         The first identifier to allocate, if there is no
+     *                      high-water mark yet.
+     * @param blockSize     The number of identifiers in each block.
+     * @param highWaterFile The file to persist the high-water mark to, or null to
+     *                      keep the allocator in memory only.
+     *
+     * @throws UncheckedIOException If the high-water mark could not be read.
+     */
+    public IdAllocator(int first, int blockSize, Path highWaterFile) {
+        long start = first;
+
+        if (highWaterFile != null && Files.exists(highWaterFile)) {
+            try {
+                start = Math.max(first,
+                        Long.parseLong(new String(Files.readAllBytes(highWaterFile), StandardCharsets.UTF_8).trim()));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        int stripeCount = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) << 1;
+
+        this.next = new AtomicLong(start);
+        this.blockSize = blockSize;
+        this.stripes = new AtomicLongArray(stripeCount);
+        this.highWaterFile = highWaterFile;
+        this.highWater = start;
+    }
+
+    /**
+     * Allocates the next identifier for the calling thread.
+     *
+     * @return A unique identifier.
+     *
+     * @throws IllegalStateException If every identifier has been allocated.
+     * @throws UncheckedIOException  If the high-water mark could not be
+     *                               persisted.
+     */
+    public int next() {
+        int stripe = (int) Thread.currentThread().getId() & (stripes.length() - 1);
+
+        while (true) {
+            long block = stripes.get(stripe);
+            int id = (int) (block >>> 32);
+            int end = (int) block;
+
+            if (id < end) {
+                if (stripes.compareAndSet(stripe, block, pack(id + 1, end))) {
+                    return id;
+                }
+
+                continue; // another thread of the same stripe won, try again
+            }
+
+            long start = reserveBlock();
+            if (stripes.compareAndSet(stripe, block, pack((int) start + 1, (int) (start + blockSize)))) {
+                return (int) start;
+            }
+
+            // another thread of the same stripe already replaced the block, the block
+            // that was just reserved is skipped and its identifiers are never used
+        }
+    }
+
+    /**
+     * Getter for the lowest identifier that has not been reserved by any block.
+     * Every identifier allocated so far is below it.
+     *
+     * @return The lowest unreserved identifier.
+     */
+    public long getReservedLimit() {
+        return next.get();
+    }
+
+    /**
+     * Moves allocation past an identifier that was handed out before, for example
+     * one recovered from a journal that is ahead of the high-water mark. This
+     * must be called before any identifier is allocated, as blocks that were
+     * already handed to threads are not moved.
+     *
+     * @param id The identifier that must never be allocated again.
+     *
+     * @throws UncheckedIOException If the high-water mark could not be
+     *                               persisted.
+     */
+    public void advancePast(long id) {
+        long end = next.accumulateAndGet(id + 1, Math::max);
+
+        if (highWaterFile != null && end > highWater) {
+            persistHighWater(end);
+        }
+    }
+
+    private long reserveBlock() {
+        long start = next.getAndAdd(blockSize);
+        long end = start + blockSize;
+
+        if (end > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Identifiers Exhausted");
+        }
+
+        if (highWaterFile != null && end > highWater) {
+            persistHighWater(end);
+        }
+
+        return start;
+    }
+
+    private synchronized void persistHighWater(long end) {
+        if (end <= highWater) {
+            return; // another thread already moved the mark far enough
+        }
+
+        long mark = Math.max(end, next.get()) + (long) blockSize * BLOCKS_PER_LEASE;
+        Path temp = highWaterFile.resolveSibling(highWaterFile.getFileName() + ".tmp");
+
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = ByteBuffer.wrap(Long.toString(mark).getBytes(StandardCharsets.UTF_8));
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+
+                channel.force(true);
+            }
+
+            Files.move(temp, highWaterFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            // the rename itself is only durable once the directory is forced
+            try (FileChannel directory = FileChannel.open(highWaterFile.toAbsolutePath().getParent(),
+                    StandardOpenOption.READ)) {
+                directory.force(true);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        highWater = mark;
+    }
+
+    private static long pack(int id, int end) {
+        return ((long) id << 32) | (end & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,53 @@
+import java.util.Comparator;
+
+/**
+ * This class contains utilities for the unique identifiers generated by the
+ * ECommerceSystem. Product IDs, customer IDs, and order numbers are all
+ * non-negative integers, exposed to the user as strings.
+ *
+ * Internally, the system stores them as primitive ints. Parsing is strict, so
+ * only the exact string the system generated maps back to its identifier.
+ *
+ * @author Ali Rizvi (501039655)
+ * @see ECommerceSystem
+ * @see IntMap
+ */
+public final class Identifiers {
+    /**
+     * Orders identifiers by their numeric value, so that "501" comes before
+     * "1000". Strings that are not identifiers are ordered after shorter strings,
+     * and alphabetically among strings of the same length.
+     */
+    public static final Comparator<String> ORDER = Comparator.comparingInt(String::length)
+            .thenComparing(Comparator.naturalOrder());
+
+    private Identifiers() {
+    }
+
+    /**
+     * Parses an identifier generated by the system without allocating. Only
+     * non-negative integers without a sign or leading zeros are accepted.
+     *
+     * @param id The identifier as a string.
+     * @return The identifier as an int, or -1 if the string is not an identifier.
+     */
+    public static int parse(String id) {
+        int length = id == null ? 0 : id.length();
+        if (length == 0 || length > 10 || (length > 1 && id.charAt(0) == '0')) {
+            return -1;
+        }
+
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            char c = id.charAt(i);
+
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+
+            value = value * 10 + (c - '0');
+        }
+
+        return value > Integer.MAX_VALUE ? -1 : (int) value;
+    }
+}
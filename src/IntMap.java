@@ -0,0 +1,312 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * This class represents a map from primitive int keys to values, used by the
+ * ECommerceSystem to store products and orders by their numeric identifiers.
+ * Keys are never boxed, lookups hash the int directly into an open addressing
+ * table that is probed linearly.
+ *
+ * Entries are stored in insertion order in a pair of dense arrays, and the hash
+ * table only stores positions into those arrays. This keeps iteration in
+ * insertion order and free of any per-entry objects. Removed entries leave a
+ * hole in the dense arrays that is compacted away the next time the arrays
+ * have to grow.
+ *
+ * This map does not accept null values, and it is not safe to modify it while
+ * iterating over it.
+ *
+ * @author Ali Rizvi (501039655)
+ * @param <V> The type of the values.
+ * @see ECommerceSystem
+ * @see ProductCatalog
+ */
+public class IntMap<V> {
+    private static final int MIN_CAPACITY = 8;
+
+    // Positions into the dense arrays plus one, 0 marks an empty slot. The table
+    // is always at least twice the size of the dense arrays.
+    private int[] table;
+
+    private int[] keys;
+    private Object[] values;
+
+    private int end; // number of dense slots used, including holes
+    private int size; // number of live entries
+
+    /**
+     * Constructs a new empty map.
+     */
+    public IntMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Constructs a new empty map that can hold the given number of entries before
+     * having to grow.
+     *
+     * @param capacity The expected number of entries.
+     */
+    public IntMap(int capacity) {
+        capacity = Math.max(MIN_CAPACITY, capacity);
+
+        keys = new int[capacity];
+        values = new Object[capacity];
+        table = new int[tableSize(capacity)];
+    }
+
+    /**
+     * Constructs a new map with the same entries as another map, in the same
+     * order. The arrays of the other map are copied as they are, so copying never
+     * has to hash a key.
+     *
+     * @param other The map to copy.
+     */
+    public IntMap(IntMap<V> other) {
+        table = other.table.clone();
+        keys = other.keys.clone();
+        values = other.values.clone();
+        end = other.end;
+        size = other.size;
+    }
+
+    /**
+     * Finds the value associated with a key.
+     *
+     * @param key The key to find.
+     * @return The value associated with the key, or null if the key is not in the
+     *         map.
+     */
+    @SuppressWarnings("unchecked") // values only ever holds instances of V
+    public V get(int key) {
+        int slot = find(key);
+
+        return slot < 0 ? null : (V) values[table[slot] - 1];
+    }
+
+    /**
+     * Validates if a key is in the map.
+     *
+     * @param key The key to find.
+     * @return True if the key is in the map.
+     */
+    public boolean containsKey(int key) {
+        return find(key) >= 0;
+    }
+
+    /**
+     * Associates a value with a key, replacing any previous value. A new key is
+     * appended to the end of the iteration order, while replacing the value of an
+     * existing key keeps its position.
+     *
+     * @param key   The key.
+     * @param value The value, which cannot be null.
+     * @return The previous value associated with the key, or null if there was
+     *         none.
+     */
+    @SuppressWarnings("unchecked") // values only ever holds instances of V
+    public V put(int key, V value) {
+        if (value == null) {
+            throw new NullPointerException("IntMap does not accept null values");
+        }
+
+        int slot = find(key);
+        if (slot >= 0) {
+            int index = table[slot] - 1;
+            V previous = (V) values[index];
+
+            values[index] = value;
+            return previous;
+        }
+
+        if (end == keys.length) {
+            // only grow if compacting the holes would not free up enough room
+            rebuild(size >= keys.length / 2 ? keys.length * 2 : keys.length);
+        }
+
+        keys[end] = key;
+        values[end] = value;
+        end++;
+        size++;
+
+        insert(key, end);
+        return null;
+    }
+
+    /**
+     * Removes a key and its value from the map.
+     *
+     * @param key The key to remove.
+     * @return The value that was associated with the key, or null if the key was
+     *         not in the map.
+     */
+    @SuppressWarnings("unchecked") // values only ever holds instances of V
+    public V remove(int key) {
+        int slot = find(key);
+        if (slot < 0) {
+            return null;
+        }
+
+        int index = table[slot] - 1;
+        V previous = (V) values[index];
+
+        values[index] = null;
+        size--;
+        delete(slot);
+
+        return previous;
+    }
+
+    /**
+     * Removes every entry from the map, and shrinks it back to its minimum
+     * capacity.
+     */
+    public void clear() {
+        keys = new int[MIN_CAPACITY];
+        values = new Object[MIN_CAPACITY];
+        table = new int[tableSize(MIN_CAPACITY)];
+        end = 0;
+        size = 0;
+    }
+
+    /**
+     * Getter for the number of entries in the map.
+     *
+     * @return The number of entries in the map.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Getter for the keys of the map, in ascending order.
+     *
+     * @return A new array with every key of the map, in ascending order.
+     */
+    public int[] sortedKeys() {
+        int[] sorted = new int[size];
+
+        for (int i = 0, j = 0; i < end; i++) {
+            if (values[i] != null) {
+                sorted[j++] = keys[i];
+            }
+        }
+
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Getter for the values of the map, in insertion order. The returned view
+     * reflects later changes to the map, but must not be used while the map is
+     * being modified.
+     *
+     * @return A view of the values of the map, in insertion order.
+     */
+    public Iterable<V> values() {
+        return () -> new Iterator<V>() {
+            private int next = advance(0);
+
+            @Override
+            public boolean hasNext() {
+                return next < end;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked") // values only ever holds instances of V
+            public V next() {
+                if (next >= end) {
+                    throw new NoSuchElementException();
+                }
+
+                V value = (V) values[next];
+                next = advance(next + 1);
+
+                return value;
+            }
+
+            private int advance(int index) {
+                while (index < end && values[index] == null) {
+                    index++;
+                }
+
+                return index;
+            }
+        };
+    }
+
+    private static int tableSize(int capacity) {
+        return Integer.highestOneBit(capacity - 1) << 2; // next power of two, doubled
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9; // spreads sequential identifiers across the table
+        return h ^ (h >>> 16);
+    }
+
+    // Returns the table slot holding the key, or -1 if the key is not in the map.
+    private int find(int key) {
+        int mask = table.length - 1;
+
+        for (int slot = hash(key) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            if (keys[table[slot] - 1] == key) {
+                return slot;
+            }
+        }
+
+        return -1;
+    }
+
+    private void insert(int key, int position) {
+        int mask = table.length - 1;
+        int slot = hash(key) & mask;
+
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+
+        table[slot] = position;
+    }
+
+    // Empties a slot, shifting back any later entries of the same probe sequence
+    // so that lookups never stop early at the new gap.
+    private void delete(int slot) {
+        int mask = table.length - 1;
+        int gap = slot;
+
+        for (int next = (gap + 1) & mask; table[next] != 0; next = (next + 1) & mask) {
+            int home = hash(keys[table[next] - 1]) & mask;
+
+            // the entry can only move into the gap if its home slot does not lie
+            // cyclically after the gap, up to its current slot
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                table[gap] = table[next];
+                gap = next;
+            }
+        }
+
+        table[gap] = 0;
+    }
+
+    private void rebuild(int capacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        int oldEnd = end;
+
+        keys = new int[capacity];
+        values = new Object[capacity];
+        table = new int[tableSize(capacity)];
+        end = 0;
+
+        for (int i = 0; i < oldEnd; i++) {
+            if (oldValues[i] != null) {
+                keys[end] = oldKeys[i];
+                values[end] = oldValues[i];
+                end++;
+
+                insert(keys[end - 1], end);
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * This class benchmarks the {@link IntMap} the ECommerceSystem stores products
+ * and orders in, against the String-keyed {@link TreeMap} it used to store
+ * them in. Lookups go through the same string IDs the public API of the
+ * system takes, so a lookup in the IntMap includes parsing the ID with
+ * {@link Identifiers#parse(String)}.
+ *
+ * Every size is measured for building the map, looking up random IDs, and
+ * iterating over every value, in several rounds. The fastest round is
+ * reported, in nanoseconds per entry or lookup.
+ *
+ * Run with {@code java IntMapBenchmark [size...]} from the directory the
+ * sources were compiled to.
+ *
+ * @author Ali Rizvi (501039655)
+ * @see IntMap
+ * @see Identifiers
+ */
+public class IntMapBenchmark {
+    private static final int[] DEFAULT_SIZES = { 1_000, 100_000, 1_000_000 };
+    private static final int FIRST_ID = 500;
+    private static final int ROUNDS = 5;
+    private static final int LOOKUPS = 2_000_000;
+
+    private static volatile long sink; // keeps the measured work from being optimized away
+
+    public static void main(String[] args) {
+        int[] sizes = args.length > 0 ? Arrays.stream(args).mapToInt(Integer::parseInt).toArray() : DEFAULT_SIZES;
+
+        System.out.printf("%10s %-8s %14s %14s %14s%n", "Entries", "Map", "Put ns/op", "Get ns/op", "Iterate ns/op");
+
+        for (int size : sizes) {
+            String[] keys = new String[size];
+            Product[] values = new Product[size];
+
+            for (int i = 0; i < size; i++) {
+                keys[i] = Integer.toString(FIRST_ID + i);
+                values[i] = new Product("Product " + i, keys[i], 1.0, 1, Product.Category.GENERAL);
+            }
+
+            Random random = new Random(size);
+            String[] lookups = new String[LOOKUPS];
+            for (int i = 0; i < lookups.length; i++) {
+                lookups[i] = keys[random.nextInt(size)];
+            }
+
+            double[] intMap = { Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE };
+            double[] treeMap = { Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE };
+
+            for (int round = 0; round < ROUNDS; round++) {
+                measureIntMap(keys, values, lookups, intMap);
+                measureTreeMap(keys, values, lookups, treeMap);
+            }
+
+            System.out.printf("%10d %-8s %14.1f %14.1f %14.1f%n", size, "IntMap", intMap[0], intMap[1], intMap[2]);
+            System.out.printf("%10d %-8s %14.1f %14.1f %14.1f%n", size, "TreeMap", treeMap[0], treeMap[1],
+                    treeMap[2]);
+        }
+    }
+
+    // Keeps the fastest nanoseconds per put, get, and iterated value of an IntMap.
+    private static void measureIntMap(String[] keys, Product[] values, String[] lookups, double[] best) {
+        long found = 0;
+
+        long start = System.nanoTime();
+        IntMap<Product> map = new IntMap<>();
+        for (int i = 0; i < keys.length; i++) {
+            map.put(Identifiers.parse(keys[i]), values[i]);
+        }
+        long put = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (String key : lookups) {
+            found += map.get(Identifiers.parse(key)).getName().length();
+        }
+        long get = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (Product product : map.values()) {
+            found += product.getName().length();
+        }
+        long iterate = System.nanoTime() - start;
+
+        sink += found;
+        keep(best, put, get, iterate, keys.length, lookups.length);
+    }
+
+    // Keeps the fastest nanoseconds per put, get, and iterated value of a TreeMap.
+    private static void measureTreeMap(String[] keys, Product[] values, String[] lookups, double[] best) {
+        long found = 0;
+
+        long start = System.nanoTime();
+        Map<String, Product> map = new TreeMap<>();
+        for (int i = 0; i < keys.length; i++) {
+            map.put(keys[i], values[i]);
+        }
+        long put = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (String key : lookups) {
+            found += map.get(key).getName().length();
+        }
+        long get = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (Product product : map.values()) {
+            found += product.getName().length();
+        }
+        long iterate = System.nanoTime() - start;
+
+        sink += found;
+        keep(best, put, get, iterate, keys.length, lookups.length);
+    }
+
+    private static void keep(double[] best, long put, long get, long iterate, int entries, int lookups) {
+        best[0] = Math.min(best[0], (double) put / entries);
+        best[1] = Math.min(best[1], (double) get / lookups);
+        best[2] = Math.min(best[2], (double) iterate / entries);
+    }
+}
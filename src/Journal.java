@@ -0,0 +1,694 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * This class represents the write-ahead journal of the ECommerceSystem. Every
+ * mutation the system must not lose, such as an order, a cancellation, or a
+ * new customer, is appended to the journal as a record, and replayed from it
+ * when the system is restarted.
+ *
+ * Appending a record only copies it into an in-memory buffer, and returns its
+ * sequence number. The record is durable once {@link #commit(long)} returns for
+ * its sequence number. Commits use group commit: the first thread to commit
+ * writes and forces everything appended so far, and every thread that commits
+ * while it is forcing waits and is covered by the next force, so concurrent
+ * mutations share a single fsync instead of each paying for its own.
+ *
+ * How long a mutation waits for the disk depends on the {@link Durability} of
+ * the journal.
+ *
+ * The journal is a series of numbered segment files in a directory. Records
+ * are appended to the newest segment, and {@link #rotate()} starts a new one,
+ * so a snapshot can cover every segment up to a rotation, after which those
+ * segments can be deleted.
+ *
+ * Every record is framed with its length and a CRC-32 checksum. A record that
+ * was only partly written when the system stopped can only be at the end of
+ * the newest segment with records, as a segment is forced before the next one
+ * is created. It is cut off when the journal is replayed. A damaged
+ * record anywhere else is corruption, and fails the replay instead of leaving
+ * a hole in the recovered state.
+ *
+ * @author Ali Rizvi (501039655)
+ * @see ECommerceSystem
+ */
+public class Journal implements AutoCloseable {
+    /**
+     * How often a {@link Durability#PERIODIC} journal forces its records.
+     */
+    public static final long FLUSH_INTERVAL_MILLIS = 10;
+
+    private static final int MAX_RECORD_SIZE = 1 << 24;
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    /**
+     * This enum represents how long mutations wait for their records to be
+     * durable, trading durability for latency.
+     *
+     * @author Ali Rizvi (501039655)
+     * @see Journal
+     */
+    public enum Durability {
+        /**
+         * Every mutation waits until its record is forced to disk, sharing the force
+         * with every concurrent mutation. Nothing acknowledged is ever lost.
+         */
+        SYNC,
+        /**
+         * Mutations never wait. Records are forced every
+         * {@link Journal#FLUSH_INTERVAL_MILLIS} by a background thread, so a crash
+         * can lose the mutations of the last interval.
+         */
+        PERIODIC,
+        /**
+         * Mutations never wait, and records are only forced when the owner of the
+         * system calls {@link Journal#sync()}, for example when a batch is committed,
+         * see {@link ECommerceSystem#commitBatch()}.
+         */
+        DEFERRED
+    }
+
+    /**
+     * This enum represents the kinds of mutations recorded in the journal.
+     *
+     * @author Ali Rizvi (501039655)
+     * @see Journal
+     */
+    public enum Type {
+        /**
+         * A new customer: customer ID, name, and address.
+         */
+        CUSTOMER,
+        /**
+         * A new order: order number, product ID, customer ID, and product options.
+         */
+        ORDER,
+        /**
+         * A checkout of a cart: customer ID, followed by the order number, product ID,
+         * and product options of every order placed.
+         */
+        CHECKOUT,
+        /**
+         * A cancelled order: order number.
+         */
+        CANCEL,
+        /**
+         * A shipped order: order number.
+         */
+        SHIP,
+        /**
+         * A rating: product ID, rating, and optionally the number of times it was
+         * given, which is 1 when it is missing.
+         */
+        RATING,
+        /**
+         * An item added to a cart: customer ID, product ID, and product options.
+         */
+        CART_ADD,
+        /**
+         * An item removed from a cart: customer ID and product ID.
+         */
+        CART_REMOVE
+    }
+
+    private final Path directory;
+    private final Durability durability;
+    private final Thread flusher;
+
+    // Both guarded by this, and only swapped while no thread is flushing.
+    private FileChannel channel;
+    private long segment;
+
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private ByteArrayOutputStream spare = new ByteArrayOutputStream();
+    private long appended; // the sequence number of the last record appended
+    private long durable; // the sequence number of the last record forced
+    private boolean flushing;
+    private boolean closed;
+    private IOException failure;
+
+    /**
+     * Constructs a new journal in a directory. Every record already in the
+     * segments from a specific segment on is replayed first, in the order it was
+     * appended, and records are then appended to a new segment after them.
+     *
+     * @param directory    The directory of the segments of the journal.
+     * @param durability   How long mutations wait for their records to be durable.
+     * @param firstSegment The first segment to replay, and the segment to append to
+     *                     if there are no segments from it on.
+     * @param replay       The consumer that receives every record replayed.
+     *
+     * @throws UncheckedIOException If the segments could not be read, or the new
+     *                              segment could not be created.
+     */
+    public Journal(Path directory, Durability durability, long firstSegment, Consumer<Record> replay) {
+        this.directory = directory;
+        this.durability = durability;
+
+        try {
+            segment = Math.max(firstSegment - 1, replay(directory, firstSegment, Long.MAX_VALUE, replay)) + 1;
+            channel = openSegment(segment);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        if (durability == Durability.PERIODIC) {
+            flusher = new Thread(this::flushPeriodically, "journal-flusher");
+            flusher.setDaemon(true);
+            flusher.start();
+        } else {
+            flusher = null;
+        }
+    }
+
+    /**
+     * Getter for the durability of this journal.
+     *
+     * @return How long mutations wait for their records to be durable.
+     */
+    public Durability getDurability() {
+        return durability;
+    }
+
+    /**
+     * Getter for the segment records are appended to.
+     *
+     * @return The number of the segment records are appended to.
+     */
+    public synchronized long getSegment() {
+        return segment;
+    }
+
+    /**
+     * Getter for the number of records appended since the journal was
+     * constructed.
+     *
+     * @return The sequence number of the last record appended.
+     */
+    public synchronized long getSequence() {
+        return appended;
+    }
+
+    /**
+     * Appends a record to the journal. The record is not durable until it is
+     * committed.
+     *
+     * @param type   The kind of mutation.
+     * @param fields The fields of the mutation, see {@link Type}, which may be
+     *               null.
+     * @return The sequence number of the record.
+     *
+     * @throws IllegalStateException If the journal is closed.
+     * @throws UncheckedIOException  If the journal failed to write earlier records.
+     */
+    public long append(Type type, String... fields) {
+        byte[] record = encode(type, fields);
+        int checksum = checksum(record);
+
+        synchronized (this) {
+            checkOpen();
+
+            DataOutputStream out = new DataOutputStream(pending);
+            try {
+                out.writeInt(record.length);
+                out.writeInt(checksum);
+                out.write(record);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e); // never thrown by an in-memory stream
+            }
+
+            return ++appended;
+        }
+    }
+
+    /**
+     * Waits, if the durability of the journal requires it, until a record is
+     * durable.
+     *
+     * @param sequence The sequence number of the record.
+     *
+     * @throws UncheckedIOException If the record could not be written.
+     */
+    public void commit(long sequence) {
+        if (durability == Durability.SYNC) {
+            sync(sequence);
+        }
+    }
+
+    /**
+     * Writes and forces every record appended so far, regardless of the durability
+     * of the journal.
+     *
+     * @throws UncheckedIOException If the records could not be written.
+     */
+    public void sync() {
+        long sequence;
+        synchronized (this) {
+            sequence = appended;
+        }
+
+        sync(sequence);
+    }
+
+    /**
+     * Forces every record appended so far to the current segment, and starts a
+     * new segment for every record appended after. Appending never waits for the
+     * rotation, records appended while it is forcing the current segment are kept
+     * in memory and go to the new segment.
+     *
+     * @return The number of the segment that was closed, which holds the last
+     *         record appended before the rotation.
+     *
+     * @throws IllegalStateException If the journal is closed.
+     * @throws UncheckedIOException  If the segments could not be written.
+     */
+    public long rotate() {
+        ByteArrayOutputStream batch;
+        long batchEnd;
+        FileChannel previous;
+        long closedSegment;
+
+        synchronized (this) {
+            checkOpen();
+
+            while (flushing) {
+                awaitFlush();
+            }
+
+            // take the flush, so no other thread writes to the channel while it is swapped
+            flushing = true;
+            batch = pending;
+            batchEnd = appended;
+            pending = spare;
+            previous = channel;
+            closedSegment = segment;
+        }
+
+        FileChannel next = null;
+        try {
+            // the closed segment is forced before the next one exists, so only the
+            // newest segment can ever end in a torn record
+            write(previous, batch);
+            previous.close();
+            next = openSegment(closedSegment + 1);
+        } catch (IOException e) {
+            if (next != null) {
+                try {
+                    next.close(); // the journal failed, nothing is ever appended to the new segment
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+
+            fail(e);
+            throw new UncheckedIOException(e);
+        }
+
+        synchronized (this) {
+            channel = next;
+            segment = closedSegment + 1;
+            flushed(batch, batchEnd);
+        }
+
+        return closedSegment;
+    }
+
+    /**
+     * Deletes every segment before a specific segment, once it is covered by a
+     * snapshot.
+     *
+     * @param firstKept The number of the first segment to keep.
+     *
+     * @throws UncheckedIOException If a segment could not be deleted.
+     */
+    public void deleteSegmentsBefore(long firstKept) {
+        try {
+            for (long existing : segments(directory)) {
+                if (existing < firstKept) {
+                    Files.delete(segmentFile(directory, existing));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Forces every record appended so far, and closes the journal.
+     *
+     * @throws UncheckedIOException If the records could not be written.
+     */
+    @Override
+    public void close() {
+        try {
+            sync();
+        } finally {
+            synchronized (this) {
+                closed = true;
+                notifyAll();
+            }
+
+            try {
+                if (flusher != null) {
+                    flusher.join();
+                }
+
+                channel.close();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    // Waits until a record is durable, forcing it if no other thread is.
+    private void sync(long sequence) {
+        ByteArrayOutputStream batch;
+        long batchEnd;
+        FileChannel target;
+
+        synchronized (this) {
+            while (durable < sequence && flushing) {
+                awaitFlush();
+            }
+
+            if (durable >= sequence) {
+                return; // a force by another thread covered the record
+            }
+
+            if (failure != null) {
+                throw new UncheckedIOException(failure);
+            }
+
+            // lead the next group: take everything appended so far, and let other
+            // threads append to the spare buffer while it is written
+            flushing = true;
+            batch = pending;
+            batchEnd = appended;
+            pending = spare;
+            target = channel;
+        }
+
+        try {
+            write(target, batch);
+        } catch (IOException e) {
+            fail(e);
+            throw new UncheckedIOException(e);
+        }
+
+        synchronized (this) {
+            flushed(batch, batchEnd);
+        }
+    }
+
+    private static void write(FileChannel target, ByteArrayOutputStream batch) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(batch.toByteArray());
+        while (buffer.hasRemaining()) {
+            target.write(buffer);
+        }
+
+        target.force(false);
+    }
+
+    // Hands the flush back once a batch is durable, guarded by this.
+    private void flushed(ByteArrayOutputStream batch, long batchEnd) {
+        batch.reset();
+        spare = batch;
+        durable = batchEnd;
+        flushing = false;
+        notifyAll();
+    }
+
+    private synchronized void fail(IOException e) {
+        failure = e; // the records of the batch are lost, so nothing later may be acknowledged
+        flushing = false;
+        notifyAll();
+    }
+
+    private FileChannel openSegment(long number) throws IOException {
+        return FileChannel.open(segmentFile(directory, number), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    private static Path segmentFile(Path directory, long number) {
+        return directory.resolve(SEGMENT_PREFIX + number + SEGMENT_SUFFIX);
+    }
+
+    // Lists the numbers of the segments of a directory, in ascending order.
+    private static List<Long> segments(Path directory) throws IOException {
+        List<Long> numbers = new ArrayList<>();
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+
+                try {
+                    numbers.add(Long.parseLong(
+                            name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    // not a segment
+                }
+            }
+        }
+
+        Collections.sort(numbers);
+        return numbers;
+    }
+
+    private void awaitFlush() {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted While Waiting For Journal", e);
+        }
+    }
+
+    private void flushPeriodically() {
+        while (true) {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+
+                try {
+                    wait(FLUSH_INTERVAL_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+
+            try {
+                sync();
+            } catch (RuntimeException e) {
+                return; // the failure is recorded, and reported to every later append
+            }
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Journal Closed");
+        }
+
+        if (failure != null) {
+            throw new UncheckedIOException(failure);
+        }
+    }
+
+    /**
+     * Replays every record of a range of segments of a journal, in the order they
+     * were appended. Only the newest segment of the journal with records, which
+     * is followed by empty segments at most, may end in a record that was partly
+     * written when the system stopped, which is cut off. A record
+     * that is damaged anywhere else means records after it were lost, so it fails
+     * the replay.
+     *
+     * @param directory    The directory of the segments of the journal.
+     * @param firstSegment The number of the first segment to replay.
+     * @param lastSegment  The number of the last segment to replay.
+     * @param replay       The consumer that receives every record replayed.
+     * @return The number of the last segment that was replayed, or -1 if there
+     *         were none in the range.
+     *
+     * @throws IOException If a segment could not be read, or is corrupt.
+     */
+    public static long replay(Path directory, long firstSegment, long lastSegment, Consumer<Record> replay)
+            throws IOException {
+        List<Long> existing = segments(directory);
+        long[] replayed = new long[1];
+        long last = -1;
+
+        // the tail is the newest segment with records, only empty segments follow it
+        long tail = existing.isEmpty() ? -1 : existing.get(existing.size() - 1);
+        for (int i = existing.size() - 1; i > 0 && Files.size(segmentFile(directory, tail)) == 0; i--) {
+            tail = existing.get(i - 1);
+        }
+
+        for (long number : existing) {
+            if (number >= firstSegment && number <= lastSegment) {
+                replay(segmentFile(directory, number), number == tail, replayed, replay);
+                last = number;
+            }
+        }
+
+        return last;
+    }
+
+    // Replays every record of a segment, counting them. The tail segment is
+    // truncated before its first damaged record, any other segment must be intact.
+    private static void replay(Path file, boolean tail, long[] replayed, Consumer<Record> replay)
+            throws IOException {
+        long valid = 0;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                int length;
+                int checksum;
+                byte[] record;
+
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    return; // every record is intact
+                }
+
+                try {
+                    checksum = in.readInt();
+
+                    if (length < 0 || length > MAX_RECORD_SIZE) {
+                        break;
+                    }
+
+                    record = new byte[length];
+                    in.readFully(record);
+                } catch (EOFException e) {
+                    break;
+                }
+
+                if (checksum(record) != checksum) {
+                    break;
+                }
+
+                replay.accept(decode(record));
+                replayed[0]++;
+                valid += 8 + length;
+            }
+        }
+
+        if (!tail) {
+            throw new IOException(String.format("Journal Segment %s Is Corrupt After Record %d", file, replayed[0]));
+        }
+
+        // the system stopped while the record was written, it was never acknowledged
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(valid);
+            channel.force(true);
+        }
+    }
+
+    private static byte[] encode(Type type, String[] fields) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        try {
+            out.writeByte(type.ordinal());
+            out.writeInt(fields.length);
+
+            for (String field : fields) {
+                out.writeBoolean(field != null);
+                if (field != null) {
+                    out.writeUTF(field);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // never thrown by an in-memory stream
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private static Record decode(byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+
+        Type type = Type.values()[in.readByte()];
+        String[] fields = new String[in.readInt()];
+
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = in.readBoolean() ? in.readUTF() : null;
+        }
+
+        return new Record(type, fields);
+    }
+
+    private static int checksum(byte[] record) {
+        CRC32 crc = new CRC32();
+        crc.update(record);
+
+        return (int) crc.getValue();
+    }
+
+    /**
+     * This class represents a record replayed from the journal.
+     *
+     * @author Ali Rizvi (501039655)
+     * @see Journal
+     */
+    public static class Record {
+        private final Type type;
+        private final String[] fields;
+
+        private Record(Type type, String[] fields) {
+            this.type = type;
+            this.fields = fields;
+        }
+
+        /**
+         * Getter for the kind of mutation of this record.
+         *
+         * @return The kind of mutation.
+         */
+        public Type getType() {
+            return type;
+        }
+
+        /**
+         * Getter for the number of fields of this record.
+         *
+         * @return The number of fields.
+         */
+        public int getFieldCount() {
+            return fields.length;
+        }
+
+        /**
+         * Getter for a field of this record.
+         *
+         * @param index The index of the field, see {@link Type}.
+         * @return The field, which may be null.
+         */
+        public String getField(int index) {
+            return fields[index];
+        }
+    }
+}
@@ -0,0 +1,114 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class benchmarks loading a large catalog with the parallel
+ * {@link CatalogLoader}, against reading it line by line on one thread, which
+ * is how the ECommerceSystem constructor used to load products.txt.
+ *
+ * A catalog of every size is generated into a temporary file, in which every
+ * fifth record is a book. Both loaders load it in several rounds, and the
+ * fastest round of each is reported.
+ *
+ * Run with {@code java -Xmx4g LoaderBenchmark [record count...]} from the
+ * directory the sources were compiled to. Ten million records need several
+ * gigabytes of heap.
+ *
+ * @author Ali Rizvi (501039655)
+ * @see CatalogLoader
+ */
+public class LoaderBenchmark {
+    private static final int[] DEFAULT_COUNTS = { 1_000_000, 10_000_000 };
+    private static final int FIRST_PRODUCT_ID = 700;
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws IOException {
+        int[] counts = args.length > 0 ? Arrays.stream(args).mapToInt(Integer::parseInt).toArray() : DEFAULT_COUNTS;
+
+        System.out.printf("%d Cores%n%10s %10s %14s %14s %10s%n", Runtime.getRuntime().availableProcessors(),
+                "Records", "File MB", "Sequential ms", "Parallel ms", "Speedup");
+
+        for (int count : counts) {
+            Path file = Files.createTempFile("catalog", ".txt");
+
+            try {
+                generate(file, count);
+
+                long sequential = Long.MAX_VALUE;
+                long parallel = Long.MAX_VALUE;
+
+                for (int round = 0; round < ROUNDS; round++) {
+                    long start = System.nanoTime();
+                    check(loadSequentially(file).size(), count);
+                    sequential = Math.min(sequential, System.nanoTime() - start);
+
+                    start = System.nanoTime();
+                    check(new CatalogLoader(FIRST_PRODUCT_ID).load(file).getProducts().size(), count);
+                    parallel = Math.min(parallel, System.nanoTime() - start);
+                }
+
+                System.out.printf("%10d %10d %14d %14d %9.2fx%n", count, Files.size(file) >> 20,
+                        sequential / 1_000_000, parallel / 1_000_000, (double) sequential / parallel);
+            } finally {
+                Files.delete(file);
+            }
+        }
+    }
+
+    private static void generate(Path file, int count) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            for (int i = 0; i < count; i++) {
+                if (i % 5 == 4) {
+                    writer.write(String.format("BOOKS%nBook %d%n%d.5%n%d %d%nTitle %d:Author %d:%d%n", i, i % 1000,
+                            i % 50, i % 20, i, i % 10_000, 1900 + i % 125));
+                } else {
+                    writer.write(String.format("COMPUTERS%nProduct %d%n%d.0%n%d%n%n", i, i % 5000, i % 100));
+                }
+            }
+        }
+    }
+
+    private static void check(int loaded, int count) {
+        if (loaded != count) {
+            throw new IllegalStateException(String.format("Loaded %d Of %d Records", loaded, count));
+        }
+    }
+
+    // Loads a catalog the way the ECommerceSystem constructor used to, five lines
+    // at a time on a single thread.
+    private static List<Product> loadSequentially(Path file) throws IOException {
+        List<Product> products = new ArrayList<>();
+        int productId = FIRST_PRODUCT_ID;
+
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            String[] lines = new String[CatalogLoader.LINES_PER_RECORD];
+
+            for (int i = 0; (lines[i] = reader.readLine()) != null; i = (i + 1) % lines.length) {
+                if (i == lines.length - 1) {
+                    Product.Category category = Product.Category.valueOf(lines[0]);
+                    String name = lines[1];
+                    double price = Double.parseDouble(lines[2]);
+                    String id = Integer.toString(productId++);
+
+                    if (category == Product.Category.BOOKS) {
+                        String[] stock = lines[3].split(" ");
+                        String[] info = lines[4].split(":");
+
+                        products.add(new Book(name, id, price, Integer.parseInt(stock[0]), Integer.parseInt(stock[1]),
+                                info[0], info[1], Integer.parseInt(info[2])));
+                    } else {
+                        products.add(new Product(name, id, price, Integer.parseInt(lines[3]), category));
+                    }
+                }
+            }
+        }
+
+        return products;
+    }
+}
@@ -0,0 +1,119 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class benchmarks the throughput of placing and cancelling orders on a
+ * single ECommerceSystem from many threads at once. Every thread repeatedly
+ * orders a random product for a random customer and cancels the order again,
+ * so stock never runs out. This measures how well the order path scales.
+ * Stock is reserved by a compare-and-set on the counter of the ordered
+ * variant, orders are kept in a map split into segments that each have their
+ * own monitor, and the history of every customer has its own monitor too.
+ * Threads that order different products for different customers rarely
+ * contend, so throughput should grow with the number of threads up to the
+ * number of cores.
+ *
+ * Every number of threads, from 1 up to twice the number of cores, is
+ * measured for a fixed time in several rounds after a warm-up, and the
+ * fastest round is reported, in orders per second. The system is in memory,
+ * so the journal is not measured.
+ *
+ * Run with {@code java OrderBenchmark [seconds per run]} from the directory
+ * that holds products.txt, with the compiled sources on the class path.
+ *
+ * @author Ali Rizvi (501039655)
+ * @see ECommerceSystem
+ * @see VariantStock
+ * @see StripedIntMap
+ * @see OrderHistoryIndex
+ */
+public class OrderBenchmark {
+    private static final int CUSTOMERS = 1_000;
+    private static final int ROUNDS = 3;
+    private static final double DEFAULT_SECONDS = 2;
+
+    public static void main(String[] args) throws InterruptedException {
+        double seconds = args.length > 0 ? Double.parseDouble(args[0]) : DEFAULT_SECONDS;
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        ECommerceSystem system = new ECommerceSystem();
+
+        List<String> products = new ArrayList<>();
+        for (Product product : system.getAllProducts()) {
+            if (product.parseOptions("") != Product.INVALID_VARIANT) { // books need options to be ordered
+                products.add(product.getId());
+            }
+        }
+
+        List<String> customers = new ArrayList<>();
+        for (int i = 0; i < CUSTOMERS; i++) {
+            customers.add(system.createCustomer("Customer " + i, "Address " + i));
+        }
+
+        for (int round = 0; round < ROUNDS; round++) {
+            run(system, products, customers, 2 * cores, seconds); // warm-up
+        }
+
+        System.out.printf("%d Cores%n%8s %16s %10s%n", cores, "Threads", "Orders/s", "Speedup");
+
+        double single = 0;
+        for (int threads = 1; threads <= 2 * cores; threads *= 2) {
+            double throughput = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                throughput = Math.max(throughput, run(system, products, customers, threads, seconds));
+            }
+
+            if (threads == 1) {
+                single = throughput;
+            }
+
+            System.out.printf("%8d %16.0f %9.2fx%n", threads, throughput, throughput / single);
+        }
+    }
+
+    // Returns the orders per second a number of threads place and cancel together.
+    private static double run(ECommerceSystem system, List<String> products, List<String> customers, int threads,
+            double seconds) throws InterruptedException {
+        LongAdder orders = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        long[] deadline = new long[1];
+        Thread[] workers = new Thread[threads];
+
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long placed = 0;
+
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                while (System.nanoTime() < deadline[0]) {
+                    String productId = products.get(random.nextInt(products.size()));
+                    String customerId = customers.get(random.nextInt(customers.size()));
+
+                    system.cancelOrder(system.orderProduct(productId, customerId, ""));
+                    placed++;
+                }
+
+                orders.add(placed);
+            });
+            workers[i].start();
+        }
+
+        long begin = System.nanoTime();
+        deadline[0] = begin + (long) (seconds * 1e9); // published to the workers by the latch
+        start.countDown();
+
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        return orders.sum() / ((System.nanoTime() - begin) / 1e9);
+    }
+}
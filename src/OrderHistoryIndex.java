@@ -0,0 +1,129 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class represents an index of the orders placed by each customer of the
+ * ECommerceSystem. For every customer, it stores the order numbers of their
+ * active orders, sorted by order number. Shipped orders are indexed by the
+ * {@link ShippedOrderArchive} instead, as they are kept on disk.
+ *
+ * The index only stores order numbers, the orders themselves are still owned
+ * by the system. Querying the history of a customer through this index costs
+ * only as much as the number of orders that customer has placed, instead of
+ * every order ever placed in the system. Long histories can be read in pages,
+ * using the last order number of a page as the cursor for the next one.
+ *
+ * The index is thread-safe. The history of each customer is guarded by its own
+ * monitor, so threads working on different customers never contend.
+ *
+ * @author Ali Rizvi (501039655)
+ * @see ECommerceSystem
+ * @see ProductOrder
+ * @see Customer
+ * @see ShippedOrderArchive
+ */
+public class OrderHistoryIndex {
+    private final Map<String, History> histories = new ConcurrentHashMap<>();
+
+    /**
+     * Records a newly placed order as an active order of the customer.
+     *
+     * @param customerId  The unique identifier of the customer that placed the
+     *                    order.
+     * @param orderNumber The order number of the order.
+     */
+    public void addActive(String customerId, String orderNumber) {
+        History history = histories.computeIfAbsent(customerId, id -> new History());
+
+        synchronized (history) {
+            history.active.add(orderNumber);
+        }
+    }
+
+    /**
+     * Removes a shipped order from the active orders of the customer.
+     *
+     * @param customerId  The unique identifier of the customer that placed the
+     *                    order.
+     * @param orderNumber The order number of the order that was shipped.
+     */
+    public void ship(String customerId, String orderNumber) {
+        History history = histories.get(customerId);
+
+        if (history != null) {
+            synchronized (history) {
+                history.active.remove(orderNumber);
+            }
+        }
+    }
+
+    /**
+     * Removes a cancelled order from the active orders of the customer.
+     *
+     * @param customerId  The unique identifier of the customer that placed the
+     *                    order.
+     * @param orderNumber The order number of the order that was cancelled.
+     */
+    public void cancel(String customerId, String orderNumber) {
+        History history = histories.get(customerId);
+
+        if (history != null) {
+            synchronized (history) {
+                history.active.remove(orderNumber);
+            }
+        }
+    }
+
+    /**
+     * Getter for a page of the active order numbers of a customer, in ascending
+     * order.
+     *
+     * @param customerId The unique identifier of the customer.
+     * @param cursor     The last order number of the previous page, or null to
+     *                   start from the first order.
+     * @param limit      The maximum number of order numbers to return.
+     * @return The order numbers of the page, which is empty once there are no
+     *         orders after the cursor.
+     */
+    public List<String> getActive(String customerId, String cursor, int limit) {
+        History history = histories.get(customerId);
+
+        if (history == null) {
+            return Collections.emptyList();
+        }
+
+        synchronized (history) {
+            return page(history.active, cursor, limit);
+        }
+    }
+
+    private static List<String> page(NavigableSet<String> orderNumbers, String cursor, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException(String.format("Invalid Page Limit: %d", limit));
+        }
+
+        NavigableSet<String> tail = cursor == null ? orderNumbers : orderNumbers.tailSet(cursor, false);
+        List<String> page = new ArrayList<>();
+
+        for (String orderNumber : tail) {
+            if (page.size() == limit) {
+                break;
+            }
+
+            page.add(orderNumber);
+        }
+
+        return page;
+    }
+
+    // The order numbers of a single customer, kept in the same order that the
+    // system lists its orders in.
+    private static class History {
+        private final NavigableSet<String> active = new TreeSet<>(Identifiers.ORDER);
+    }
+}
@@ -0,0 +1,162 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * This class benchmarks the {@link CommandPipeline} against applying commands
+ * on the threads that issue them, which relies on the locks of the
+ * ECommerceSystem. Every thread repeatedly orders a random product for a
+ * random customer and cancels the order again, and waits for the outcome of
+ * every command before issuing the next, the way a request thread of the
+ * {@link ECommerceHttpServer} does.
+ *
+ * Both modes are measured with the system in memory, and with a journal. With
+ * a journal, the lock-based mode commits every command with
+ * {@link Journal.Durability#SYNC}, sharing forces between concurrent commands,
+ * while the pipeline forces a {@link Journal.Durability#DEFERRED} journal once
+ * per batch, before the batch is applied. Every mode is measured in several rounds after a warm-up, and the
+ * fastest round is reported, in commands per second.
+ *
+ * Run with {@code java PipelineBenchmark [threads] [seconds per run]} from the
+ * directory that holds products.txt, with the compiled sources on the class
+ * path.
+ *
+ * @author Ali Rizvi (501039655)
+ * @see CommandPipeline
+ */
+public class PipelineBenchmark {
+    private static final int CUSTOMERS = 1_000;
+    private static final int ROUNDS = 3;
+    private static final int DEFAULT_THREADS = 8;
+    private static final double DEFAULT_SECONDS = 2;
+
+    /**
+     * This interface places an order and cancels it, the way one of the modes
+     * applies commands.
+     *
+     * @author Ali Rizvi (501039655)
+     * @see PipelineBenchmark
+     */
+    private interface Client {
+        void orderAndCancel(String productId, String customerId);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_THREADS;
+        double seconds = args.length > 1 ? Double.parseDouble(args[1]) : DEFAULT_SECONDS;
+
+        System.out.printf("%d Cores, %d Threads%n", Runtime.getRuntime().availableProcessors(), threads);
+
+        double[] results = new double[4];
+        results[0] = measure(null, false, threads, seconds);
+        results[1] = measure(null, true, threads, seconds);
+
+        Path directory = Files.createTempDirectory("pipeline-benchmark");
+        try {
+            results[2] = measure(directory.resolve("locks"), false, threads, seconds);
+            results[3] = measure(directory.resolve("pipeline"), true, threads, seconds);
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(file);
+                }
+            }
+        }
+
+        System.out.printf("%n%-10s %18s %18s%n", "Mode", "Memory Commands/s", "Journal Commands/s");
+        System.out.printf("%-10s %18.0f %18.0f%n", "Locks", results[0], results[2]);
+        System.out.printf("%-10s %18.0f %18.0f%n", "Pipeline", results[1], results[3]);
+    }
+
+    // Returns the commands per second of a mode, on a new system that is in memory
+    // if it has no state directory.
+    private static double measure(Path stateDirectory, boolean pipelined, int threads, double seconds)
+            throws InterruptedException {
+        Journal.Durability durability = pipelined ? Journal.Durability.DEFERRED : Journal.Durability.SYNC;
+
+        try (ECommerceSystem system = new ECommerceSystem(stateDirectory, durability)) {
+            List<String> products = new ArrayList<>();
+            for (Product product : system.getAllProducts()) {
+                if (product.parseOptions("") != Product.INVALID_VARIANT) { // books need options to be ordered
+                    products.add(product.getId());
+                }
+            }
+
+            List<String> customers = new ArrayList<>();
+            for (int i = 0; i < CUSTOMERS; i++) {
+                customers.add(system.createCustomer("Customer " + i, "Address " + i));
+            }
+
+            CommandPipeline pipeline = pipelined ? new CommandPipeline(system) : null;
+
+            try {
+                Client client = pipeline != null
+                        ? (productId, customerId) -> pipeline
+                                .cancelOrder(pipeline.orderProduct(productId, customerId, "").join()).join()
+                        : (productId, customerId) -> system.cancelOrder(system.orderProduct(productId, customerId,
+                                ""));
+
+                run(client, products, customers, threads, seconds); // warm-up
+
+                double best = 0;
+                for (int round = 0; round < ROUNDS; round++) {
+                    best = Math.max(best, run(client, products, customers, threads, seconds));
+                }
+
+                return best;
+            } finally {
+                if (pipeline != null) {
+                    pipeline.close();
+                }
+            }
+        }
+    }
+
+    // Returns the commands per second a number of threads apply together.
+    private static double run(Client client, List<String> products, List<String> customers, int threads,
+            double seconds) throws InterruptedException {
+        LongAdder commands = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        long[] deadline = new long[1];
+        Thread[] workers = new Thread[threads];
+
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long applied = 0;
+
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                while (System.nanoTime() < deadline[0]) {
+                    client.orderAndCancel(products.get(random.nextInt(products.size())),
+                            customers.get(random.nextInt(customers.size())));
+                    applied += 2;
+                }
+
+                commands.add(applied);
+            });
+            workers[i].start();
+        }
+
+        long begin = System.nanoTime();
+        deadline[0] = begin + (long) (seconds * 1e9); // published to the workers by the latch
+        start.countDown();
+
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        return commands.sum() / ((System.nanoTime() - begin) / 1e9);
+    }
+}
@@ -1,242 +1,379 @@
-/**
- * This class represents a product that can be ordered via our ECommerceSystem.
- * Each product has a unique identifier associated with it. Additionally, we
- * also store the product name, price, valid options, and the category best
- * aligned with the product.
- *
- * Products can be ordered by customers. Each order will be designated to that
- * specified customer, and managed by the system. The system will then create a
- * new product order for that customer, and manage it until the order is either
- * shipped or cancelled.
- *
- * @author Ali Rizvi (501039655)
- * @see ECommerceSystem
- * @see Customer
- * @see ProductOrder
- */
-public class Product {
-    public static enum Category {
-        GENERAL, CLOTHING, BOOKS, FURNITURE, COMPUTERS
-    };
-
-    private final String name;
-    private final String id;
-    private final Category category;
-    private final double price;
-    private int stockCount;
-
-    /**
-     * Constructs a new product with the given name, id, price, stock count, and
-     * category.
-     *
-     * @param name       The name of the product.
-     * @param id         The unique identifier of the product, generated by the
-     *                   {@link ECommerceSystem}.
-     * @param price      The price of the product.
-     * @param stockCount The number of items in stock.
-     * @param category   The category of the product.
-     */
-    public Product(String name, String id, double price, int stockCount, Category category) {
-        this.name = name;
-        this.id = id;
-        this.price = price;
-        this.stockCount = stockCount;
-        this.category = category;
-    }
-
-    /**
-     * Getter for the name of the product.
-     *
-     * @return The name of the product.
-     */
-    public String getName() {
-        return name;
-    }
-
-    /**
-     * Getter for the unique identifier of the product.
-     *
-     * @return The unique identifier of the product that was generated by the
-     *         {@link ECommerceSystem}.
-     */
-    public String getId() {
-        return id;
-    }
-
-    /**
-     * Getter for the price of the product.
-     *
-     * @return The price of the product.
-     */
-    public double getPrice() {
-        return price;
-    }
-
-    /**
-     * Getter for the category of the product.
-     *
-     * @return The category of the product.
-     */
-    public Category getCategory() {
-        return category;
-    }
-
-    /**
-     * Validates if the product options specified are valid for this product. A
-     * product option is considered valid if it has a designated stock available
-     * based on the criteria. This implementation returns true only if the
-     * productOptions is null. This is to safeguard against productOptions being
-     * specified to a generic product that has no implementation for them. This
-     * method should be overridden by subclasses to implement specific product
-     * validation.
-     *
-     * @param options The product options to validate.
-     * @return True if the product options are valid for this product.
-     */
-    public boolean validOptions(String productOptions) {
-        return productOptions == null || productOptions.isEmpty();
-    }
-
-    /**
-     * Validates if this product has stock available for the product options
-     * specified. This implementation does not use the product options, as this is a
-     * generic product. However, this method should be overridden by subclasses to
-     * implement specific stock validation.
-     *
-     * @param productOptions The product options to check stock for.
-     * @return True if the product has stock available for the product options
-     *         specified.
-     */
-    public boolean hasStock(String productOptions) {
-        return stockCount > 0;
-    }
-
-    /**
-     * Reduces the stock count of this product by one, based on the product options.
-     * This implementation does not use the product options, as this is a generic
-     * product. However, this method should be overridden by subclasses to implement
-     * specific stock reduction.
-     *
-     * @param productOptions The product options to reduce the stock for.
-     */
-    public void reduceStock(String productOptions) {
-        stockCount--;
-    }
-
-    /**
-     * Increases the stock count of this product by one, based on the product
-     * options. This implementation does not use the product options, as this is a
-     * generic product. However, this method should be overridden by subclasses to
-     * implement specific stock returns.
-     *
-     * @param productOptions The product options that were specified.
-     */
-    public void returnStock(String productOptions) {
-        stockCount++;
-    }
-
-    /**
-     * Overrides {@link Object#equals(Object)}. This implementation compares the
-     * unique identifiers of the two products. Internally, it checks if the other
-     * object is a product, then compares the unique identifiers.
-     *
-     * @param obj The object to compare to.
-     * @return True if the object is a product and has the same unique identifier as
-     *         this product.
-     */
-    @Override
-    public boolean equals(Object other) {
-        return other instanceof Product && id.equals(((Product) other).id);
-    }
-
-    /**
-     * Overrides {@link Object#toString()}. This implementation returns a string
-     * that contains the Product information in a specific format. Internally it
-     * makes use of {@link String#format(String, Object...)}.
-     *
-     * @return A string that contains the Product information in a specific format.
-     */
-    @Override
-    public String toString() {
-        return String.format("\nId: %-5s Category: %-9s Name: %-20s Price: %7.1f", id, category, name, price);
-    }
-
-    /**
-     * This class extends the RuntimeException to represent an error where a product
-     * cannot be found based on their ID.
-     *
-     * @author Ali Rizvi (501039655)
-     * @see RuntimeException
-     * @see Product
-     */
-    public static class NotFoundException extends RuntimeException {
-        /**
-         * Constructs a new NotFoundException with the customerId.
-         *
-         * @param productId The productId of the product that was not found.
-         */
-        public NotFoundException(String productId) {
-            super(String.format("Product %s Not Found", productId));
-        }
-    }
-
-    /**
-     * This class extends the RuntimeException to represent an error where a product
-     * is given invalid options.
-     *
-     * @author Ali Rizvi (501039655)
-     * @see RuntimeException
-     * @see Product
-     */
-    public static class InvalidOptionsException extends RuntimeException {
-        /**
-         * Constructs a new InvalidOptionsException with the specified product and the
-         * invalid options given.
-         *
-         * @param product        The product that was given invalid options.
-         * @param productOptions The invalid options given.
-         */
-        public InvalidOptionsException(Product product, String productOptions) {
-            super(String.format("Product %s ProductId %s Invalid Options: %s", product.getName(), product.id,
-                    productOptions));
-        }
-    }
-
-    /**
-     * This class extends the RuntimeException to represent an error where a product
-     * does not have any stock available.
-     *
-     * @author Ali Rizvi (501039655)
-     * @see RuntimeException
-     * @see Product
-     */
-    public static class NoStockException extends RuntimeException {
-        /**
-         * Constructs a new NoStockException with the specified product that has no
-         * stock.
-         *
-         * @param product The product that has no stock.
-         */
-        public NoStockException(Product product) {
-            super(String.format("Product %s ProductId %s Out of Stock", product.getName(), product.id));
-        }
-    }
-
-    /**
-     * This class extends the RuntimeException to represent an error where a product
-     * is given an invalid rating.
-     */
-    public static class InvalidRatingException extends RuntimeException {
-        /**
-         * Constructs a new InvalidRatingException with the specified product and the
-         * invalid rating given.
-         *
-         * @param product The product that was given an invalid rating.
-         * @param rating  The invalid rating given.
-         */
-        public InvalidRatingException(Product product, int rating) {
-            super(String.format("Product %s ProductId %s Invalid Rating: %d", product.getName(), product.getId(),
-                    rating));
-        }
-    }
-}
+/**
+ * This class represents a product that can be ordered via our ECommerceSystem.
+ * Each product has a unique identifier associated with it. Additionally, we
+ * also store the product name, price, valid options, and the category best
+ * aligned with the product.
+ *
+ * The stock of a product is kept per variant in a {@link VariantStock}, and can
+ * be reserved and released atomically without any locks.
+ *
+ * Products can be ordered by customers. Each order will be designated to that
+ * specified customer, and managed by the system. The system will then create a
+ * new product order for that customer, and manage it until the order is either
+ * shipped or cancelled.
+ *
+ * @author Ali Rizvi (501039655)
+ * @see ECommerceSystem
+ * @see Customer
+ * @see ProductOrder
+ */
+public class Product {
+    public static enum Category {
+        GENERAL, CLOTHING, BOOKS, FURNITURE, COMPUTERS
+    };
+
+    /**
+     * The variant returned by {@link #parseOptions(String)} when the product
+     * options are not valid for the product.
+     */
+    public static final int INVALID_VARIANT = -1;
+
+    private final String name;
+    private final String id;
+    private final Category category;
+    private final double price;
+    private final VariantStock stock;
+
+    /**
+     * Constructs a new product with the given name, id, price, stock count, and
+     * category.
+     *
+     * @param name       The name of the product.
+     * @param id         The unique identifier of the product, generated by the
+     *                   {@link ECommerceSystem}.
+     * @param price      The price of the product.
+     * @param stockCount The number of items in stock.
+     * @param category   The category of the product.
+     */
+    public Product(String name, String id, double price, int stockCount, Category category) {
+        this(name, id, price, new VariantStock(new int[] { stockCount }), category);
+    }
+
+    /**
+     * Constructs a new product with the given name, id, price, stock of every
+     * variant, and category. Subclasses use this to declare the variants they
+     * parse their product options into.
+     *
+     * @param name     The name of the product.
+     * @param id       The unique identifier of the product, generated by the
+     *                 {@link ECommerceSystem}.
+     * @param price    The price of the product.
+     * @param stock    The stock of every variant of the product.
+     * @param category The category of the product.
+     */
+    protected Product(String name, String id, double price, VariantStock stock, Category category) {
+        this.name = name;
+        this.id = id;
+        this.price = price;
+        this.stock = stock;
+        this.category = category;
+    }
+
+    /**
+     * Getter for the name of the product.
+     *
+     * @return The name of the product.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Getter for the unique identifier of the product.
+     *
+     * @return The unique identifier of the product that was generated by the
+     *         {@link ECommerceSystem}.
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Getter for the price of the product.
+     *
+     * @return The price of the product.
+     */
+    public double getPrice() {
+        return price;
+    }
+
+    /**
+     * Getter for the category of the product.
+     *
+     * @return The category of the product.
+     */
+    public Category getCategory() {
+        return category;
+    }
+
+    /**
+     * Parses the product options specified into a variant of this product. A
+     * variant is a small, non-negative number that identifies one specific stock
+     * of this product, such as the format of a book or the size and color of a
+     * shoe. Parsing happens once, after which the variant can be passed to the
+     * stock methods directly. This implementation only accepts null or empty
+     * product options, as a generic product has a single variant. This method
+     * should be overridden by subclasses to implement specific product options.
+     *
+     * @param productOptions The product options to parse.
+     * @return The variant of this product for the product options specified, or
+     *         {@link #INVALID_VARIANT} if the product options are not valid.
+     */
+    public int parseOptions(String productOptions) {
+        return productOptions == null || productOptions.isEmpty() ? 0 : INVALID_VARIANT;
+    }
+
+    /**
+     * Validates if the product options specified are valid for this product. A
+     * product option is considered valid if it has a designated stock available
+     * based on the criteria. Internally, it uses {@link #parseOptions(String)},
+     * which subclasses override to implement specific product validation.
+     *
+     * @param productOptions The product options to validate.
+     * @return True if the product options are valid for this product.
+     */
+    public boolean validOptions(String productOptions) {
+        return parseOptions(productOptions) != INVALID_VARIANT;
+    }
+
+    /**
+     * Validates if this product has stock available for the product options
+     * specified. Internally, it parses the product options with
+     * {@link #parseOptions(String)} and uses {@link #hasStock(int)}.
+     *
+     * @param productOptions The product options to check stock for.
+     * @return True if the product has stock available for the product options
+     *         specified.
+     */
+    public boolean hasStock(String productOptions) {
+        return hasStock(parseOptions(productOptions));
+    }
+
+    /**
+     * Validates if this product has stock available for the variant specified.
+     * The answer may be out of date as soon as it is returned when other threads
+     * order the same product, use {@link #tryReserve(int)} to actually take a unit
+     * of stock.
+     *
+     * @param variant The variant to check stock for.
+     * @return True if the product has stock available for the variant specified.
+     */
+    public boolean hasStock(int variant) {
+        return stock.has(variant);
+    }
+
+    /**
+     * Getter for the stock count of a variant of this product.
+     *
+     * @param variant The variant, as parsed by {@link #parseOptions(String)}.
+     * @return The stock count of the variant.
+     */
+    public int getStock(int variant) {
+        return stock.get(variant);
+    }
+
+    /**
+     * Getter for the number of variants of this product.
+     *
+     * @return The number of variants of this product.
+     */
+    public int getVariantCount() {
+        return stock.size();
+    }
+
+    /**
+     * Reserves a unit of stock for the product options specified. Internally, it
+     * parses the product options with {@link #parseOptions(String)} and uses
+     * {@link #tryReserve(int)}.
+     *
+     * @param productOptions The product options to reserve stock for.
+     * @return True if there was stock available and a unit was reserved.
+     */
+    public boolean tryReserve(String productOptions) {
+        return tryReserve(parseOptions(productOptions));
+    }
+
+    /**
+     * Reserves a unit of stock for the variant specified. The stock is checked and
+     * reduced in a single atomic step, so concurrent orders of the same variant
+     * never block each other and can never oversell it.
+     *
+     * @param variant The variant to reserve stock for.
+     * @return True if there was stock available and a unit was reserved.
+     */
+    public boolean tryReserve(int variant) {
+        return stock.tryReserve(variant);
+    }
+
+    /**
+     * Releases a unit of stock for the variant specified that was previously
+     * reserved, in a single atomic step.
+     *
+     * @param variant The variant to release stock for.
+     */
+    public void release(int variant) {
+        stock.release(variant);
+    }
+
+    /**
+     * Reduces the stock count of this product by one, based on the product options.
+     * Internally, it parses the product options with {@link #parseOptions(String)}
+     * and uses {@link #reduceStock(int)}.
+     *
+     * @param productOptions The product options to reduce the stock for.
+     */
+    public void reduceStock(String productOptions) {
+        reduceStock(parseOptions(productOptions));
+    }
+
+    /**
+     * Reduces the stock count of this product by one, based on the variant. The
+     * stock is reduced even if none is available, use {@link #tryReserve(int)} to
+     * check and reduce the stock at once.
+     *
+     * @param variant The variant to reduce the stock for.
+     */
+    public void reduceStock(int variant) {
+        stock.reduce(variant);
+    }
+
+    /**
+     * Increases the stock count of this product by one, based on the product
+     * options. Internally, it parses the product options with
+     * {@link #parseOptions(String)} and uses {@link #returnStock(int)}.
+     *
+     * @param productOptions The product options that were specified.
+     */
+    public void returnStock(String productOptions) {
+        returnStock(parseOptions(productOptions));
+    }
+
+    /**
+     * Increases the stock count of this product by one, based on the variant. This
+     * is the same as {@link #release(int)}.
+     *
+     * @param variant The variant that was specified.
+     */
+    public void returnStock(int variant) {
+        release(variant);
+    }
+
+    /**
+     * Overrides {@link Object#equals(Object)}. This implementation compares the
+     * unique identifiers of the two products. Internally, it checks if the other
+     * object is a product, then compares the unique identifiers.
+     *
+     * @param obj The object to compare to.
+     * @return True if the object is a product and has the same unique identifier as
+     *         this product.
+     */
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Product && id.equals(((Product) other).id);
+    }
+
+    /**
+     * Renders the Product information in a specific format, the same format that
+     * {@link #toString()} returns.
+     *
+     * @param out The writer to render the product into.
+     */
+    public void render(ReportWriter out) {
+        out.append("\nId: ").appendLeftAligned(id, 5).append(" Category: ").appendLeftAligned(category, 9)
+                .append(" Name: ").appendLeftAligned(name, 20).append(" Price: ").appendFixed(price, 7, 1);
+    }
+
+    /**
+     * Overrides {@link Object#toString()}. This implementation returns a string
+     * that contains the Product information in a specific format. Internally it
+     * makes use of {@link #render(ReportWriter)}.
+     *
+     * @return A string that contains the Product information in a specific format.
+     */
+    @Override
+    public String toString() {
+        ReportWriter out = new ReportWriter();
+        render(out);
+
+        return out.toString();
+    }
+
+    /**
+     * This class extends the RuntimeException to represent an error where a product
+     * cannot be found based on their ID.
+     *
+     * @author Ali Rizvi (501039655)
+     * @see RuntimeException
+     * @see Product
+     */
+    public static class NotFoundException extends RuntimeException {
+        /**
+         * Constructs a new NotFoundException with the customerId.
+         *
+         * @param productId The productId of the product that was not found.
+         */
+        public NotFoundException(String productId) {
+            super(String.format("Product %s Not Found", productId));
+        }
+    }
+
+    /**
+     * This class extends the RuntimeException to represent an error where a product
+     * is given invalid options.
+     *
+     * @author Ali Rizvi (501039655)
+     * @see RuntimeException
+     * @see Product
+     */
+    public static class InvalidOptionsException extends RuntimeException {
+        /**
+         * Constructs a new InvalidOptionsException with the specified product and the
+         * invalid options given.
+         *
+         * @param product        The product that was given invalid options.
+         * @param productOptions The invalid options given.
+         */
+        public InvalidOptionsException(Product product, String productOptions) {
+            super(String.format("Product %s ProductId %s Invalid Options: %s", product.getName(), product.id,
+                    productOptions));
+        }
+    }
+
+    /**
+     * This class extends the RuntimeException to represent an error where a product
+     * does not have any stock available.
+     *
+     * @author Ali Rizvi (501039655)
+     * @see RuntimeException
+     * @see Product
+     */
+    public static class NoStockException extends RuntimeException {
+        /**
+         * Constructs a new NoStockException with the specified product that has no
+         * stock.
+         *
+         * @param product The product that has no stock.
+         */
+        public NoStockException(Product product) {
+            super(String.format("Product %s ProductId %s Out of Stock", product.getName(), product.id));
+        }
+    }
+
+    /**
+     * This class extends the RuntimeException to represent an error where a product
+     * is given an invalid rating.
+     */
+    public static class InvalidRatingException extends RuntimeException {
+        /**
+         * Constructs a new InvalidRatingException with the specified product and the
+         * invalid rating given.
+         *
+         * @param product The product that was given an invalid rating.
+         * @param rating  The invalid rating given.
+         */
+        public InvalidRatingException(Product product, int rating) {
+            super(String.format("Product %s ProductId %s Invalid Rating: %d", product.getName(), product.getId(),
+                    rating));
+        }
+    }
+}
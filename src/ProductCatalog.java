@@ -0,0 +1,419 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * This class represents the catalog of every product sold through the
+ * ECommerceSystem. Products are stored by their unique identifier, and are
+ * additionally indexed by their category and by their concrete type, such as
+ * {@link Book} or {@link Shoes}.
+ *
+ * The secondary indexes are maintained whenever a product is added to or
+ * removed from the catalog, so listing the products of a single category or
+ * type costs only as much as the number of matching products. Every listing is
+ * sorted by the unique identifier of the products. The products themselves are
+ * stored by their numeric ID in an {@link IntMap}.
+ *
+ * Books are also indexed by their author. Each author keeps their books sorted
+ * by year of publication, so listing the books of an author never has to sort.
+ * Authors can be matched exactly, ignoring case, or by a prefix of their name.
+ *
+ * Finally, the catalog keeps every product sorted by price and by name. These
+ * views can be read in pages and narrowed down to a range of prices or a
+ * prefix of the name, without sorting the catalog on every request.
+ *
+ * A catalog is not thread-safe while it is being changed. Once it is frozen it
+ * can no longer be changed, and can be read by any number of threads. Each
+ * copy of a catalog carries the next version number, see
+ * {@link VersionedCatalog}.
+ *
+ * @author Ali Rizvi (501039655)
+ * @see ECommerceSystem
+ * @see Product
+ */
+public class ProductCatalog {
+    private final long version;
+    private boolean frozen;
+
+    private final IntMap<Product> products;
+
+    private final Map<Product.Category, Map<String, Product>> productsByCategory;
+    private final Map<Class<? extends Product>, Map<String, Product>> productsByType;
+
+    // Keyed by author ignoring case, then by the exact spelling of the author.
+    private final NavigableMap<String, Map<String, NavigableSet<Book>>> booksByAuthor;
+
+    // Keyed by price and by name, products sharing a key are sorted by their ID.
+    private final NavigableMap<Double, Map<String, Product>> productsByPrice;
+    private final NavigableMap<String, Map<String, Product>> productsByName;
+
+    private static final Comparator<Book> BY_YEAR = Comparator.comparingInt(Book::getYear)
+            .thenComparing(Book::getId, Identifiers.ORDER);
+
+    /**
+     * Constructs a new empty catalog, at version 0.
+     */
+    public ProductCatalog() {
+        version = 0;
+        products = new IntMap<>();
+        productsByCategory = new EnumMap<>(Product.Category.class);
+        productsByType = new HashMap<>();
+        booksByAuthor = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        productsByPrice = new TreeMap<>();
+        productsByName = new TreeMap<>();
+    }
+
+    // Copies every index of the source. Copying a sorted map or set keeps its
+    // order and takes linear time, so nothing is sorted again.
+    private ProductCatalog(ProductCatalog source) {
+        version = source.version + 1;
+        products = new IntMap<>(source.products);
+
+        productsByCategory = new EnumMap<>(source.productsByCategory);
+        productsByCategory.replaceAll((category, group) -> copyOf(group));
+
+        productsByType = new HashMap<>(source.productsByType);
+        productsByType.replaceAll((type, group) -> copyOf(group));
+
+        productsByPrice = new TreeMap<>(source.productsByPrice);
+        productsByPrice.replaceAll((price, group) -> copyOf(group));
+
+        productsByName = new TreeMap<>(source.productsByName);
+        productsByName.replaceAll((name, group) -> copyOf(group));
+
+        booksByAuthor = new TreeMap<>(source.booksByAuthor);
+        booksByAuthor.replaceAll((author, spellings) -> {
+            TreeMap<String, NavigableSet<Book>> copy = new TreeMap<>((SortedMap<String, NavigableSet<Book>>) spellings);
+            copy.replaceAll((spelling, books) -> new TreeSet<>(books));
+
+            return copy;
+        });
+    }
+
+    /**
+     * Creates a copy of this catalog that can be changed, with the next version
+     * number. The products themselves are shared, not copied.
+     *
+     * @return A new catalog with the same products and the next version number.
+     */
+    public ProductCatalog copy() {
+        return new ProductCatalog(this);
+    }
+
+    /**
+     * Freezes this catalog, after which it can no longer be changed.
+     */
+    public void freeze() {
+        frozen = true;
+    }
+
+    /**
+     * Getter for the version of this catalog.
+     *
+     * @return The version of this catalog, which is one more than the version it
+     *         was copied from.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Adds a product to the catalog and all of its indexes.
+     *
+     * @param product The product to add.
+     *
+     * @throws IllegalArgumentException If the unique identifier of the product
+     *                                  is not numeric, or a product with the same
+     *                                  unique identifier is already in the
+     *                                  catalog.
+     * @throws IllegalStateException    If the catalog is frozen.
+     */
+    public void add(Product product) {
+        checkNotFrozen();
+
+        int id = Identifiers.parse(product.getId());
+
+        if (id < 0) {
+            throw new IllegalArgumentException(String.format("Invalid Product Id: %s", product.getId()));
+        }
+
+        if (products.containsKey(id)) {
+            throw new IllegalArgumentException(String.format("Product %s Already Exists", product.getId()));
+        }
+
+        products.put(id, product);
+
+        addTo(productsByCategory, product.getCategory(), product);
+        addTo(productsByType, product.getClass(), product);
+        addTo(productsByPrice, product.getPrice(), product);
+        addTo(productsByName, product.getName(), product);
+
+        if (product instanceof Book) {
+            Book book = (Book) product;
+
+            booksByAuthor.computeIfAbsent(book.getAuthor(), a -> new TreeMap<>())
+                    .computeIfAbsent(book.getAuthor(), a -> new TreeSet<>(BY_YEAR)).add(book);
+        }
+    }
+
+    /**
+     * Removes a product from the catalog and all of its indexes.
+     *
+     * @param productId The unique identifier of the product to remove.
+     * @return The product that was removed.
+     *
+     * @throws Product.NotFoundException If the product is not in the catalog.
+     * @throws IllegalStateException     If the catalog is frozen.
+     */
+    public Product remove(String productId) {
+        checkNotFrozen();
+
+        Product product = products.remove(Identifiers.parse(productId));
+
+        if (product == null) {
+            throw new Product.NotFoundException(productId);
+        }
+
+        removeFrom(productsByCategory, product.getCategory(), productId);
+        removeFrom(productsByType, product.getClass(), productId);
+        removeFrom(productsByPrice, product.getPrice(), productId);
+        removeFrom(productsByName, product.getName(), productId);
+
+        if (product instanceof Book) {
+            Book book = (Book) product;
+            Map<String, NavigableSet<Book>> spellings = booksByAuthor.get(book.getAuthor());
+            NavigableSet<Book> books = spellings.get(book.getAuthor());
+
+            books.remove(book);
+            if (books.isEmpty()) {
+                spellings.remove(book.getAuthor());
+            }
+
+            if (spellings.isEmpty()) {
+                booksByAuthor.remove(book.getAuthor());
+            }
+        }
+
+        return product;
+    }
+
+    /**
+     * Finds a product based on its unique identifier.
+     *
+     * @param productId The unique identifier of the product.
+     * @return The product with the given unique identifier, or null if it is not
+     *         in the catalog.
+     */
+    public Product get(String productId) {
+        return products.get(Identifiers.parse(productId));
+    }
+
+    /**
+     * Getter for every product in the catalog, in the order they were added.
+     *
+     * @return A view of every product in the catalog.
+     */
+    public Iterable<Product> getAll() {
+        return products.values();
+    }
+
+    /**
+     * Getter for every product in the catalog that belongs to a category.
+     *
+     * @param category The category of the products.
+     * @return An unmodifiable view of the products in the category.
+     */
+    public Collection<Product> getByCategory(Product.Category category) {
+        Map<String, Product> matches = productsByCategory.get(category);
+
+        return matches == null ? Collections.emptyList() : Collections.unmodifiableCollection(matches.values());
+    }
+
+    /**
+     * Getter for every product in the catalog of a specific concrete type.
+     * Products of subclasses of the type are not included.
+     *
+     * @param <T>  The concrete type of the products.
+     * @param type The class of the concrete type.
+     * @return An unmodifiable view of the products of the type.
+     */
+    @SuppressWarnings("unchecked") // the index only stores products of exactly this type
+    public <T extends Product> Collection<T> getByType(Class<T> type) {
+        Map<String, Product> matches = productsByType.get(type);
+
+        if (matches == null) {
+            return Collections.emptyList();
+        }
+
+        return Collections.unmodifiableCollection((Collection<T>) matches.values());
+    }
+
+    /**
+     * Getter for a page of the products in the catalog, sorted by their price in
+     * ascending order. Only products priced within the given range are included.
+     *
+     * @param minPrice The lowest price to include.
+     * @param maxPrice The highest price to include.
+     * @param offset   The number of matching products to skip.
+     * @param limit    The maximum number of products to return.
+     * @return The products of the page.
+     */
+    public List<Product> getByPrice(double minPrice, double maxPrice, int offset, int limit) {
+        if (minPrice > maxPrice) {
+            return Collections.emptyList();
+        }
+
+        return page(productsByPrice.subMap(minPrice, true, maxPrice, true).values(), offset, limit);
+    }
+
+    /**
+     * Getter for a page of the products in the catalog, sorted by their name in
+     * alphabetical order. Only products whose name starts with the given prefix
+     * are included.
+     *
+     * @param prefix The prefix of the name, which is case-sensitive. An empty
+     *               prefix includes every product.
+     * @param offset The number of matching products to skip.
+     * @param limit  The maximum number of products to return.
+     * @return The products of the page.
+     */
+    public List<Product> getByName(String prefix, int offset, int limit) {
+        return page(productsByName.subMap(prefix, true, prefix + Character.MAX_VALUE, true).values(), offset, limit);
+    }
+
+    /**
+     * Getter for every book written by an author, sorted by their year of
+     * publication. The author must match exactly.
+     *
+     * @param author The author of the books.
+     * @return An unmodifiable view of the books written by the author.
+     */
+    public Collection<Book> getBooksByAuthor(String author) {
+        Map<String, NavigableSet<Book>> spellings = booksByAuthor.get(author);
+        NavigableSet<Book> books = spellings == null ? null : spellings.get(author);
+
+        return books == null ? Collections.emptyList() : Collections.unmodifiableCollection(books);
+    }
+
+    /**
+     * Getter for every book written by an author, ignoring the case of the
+     * author. The books are grouped by the exact spelling of the author, and each
+     * group is sorted by year of publication.
+     *
+     * @param author The author of the books, in any case.
+     * @return The books written by the author.
+     */
+    public List<Book> getBooksByAuthorIgnoreCase(String author) {
+        List<Book> books = new ArrayList<>();
+        Map<String, NavigableSet<Book>> spellings = booksByAuthor.get(author);
+
+        if (spellings != null) {
+            for (NavigableSet<Book> group : spellings.values()) {
+                books.addAll(group);
+            }
+        }
+
+        return books;
+    }
+
+    /**
+     * Getter for every book whose author starts with a prefix, ignoring case. The
+     * books are grouped by author in alphabetical order, and each group is sorted
+     * by year of publication.
+     *
+     * @param prefix The prefix of the author, in any case.
+     * @return The books written by every matching author.
+     */
+    public List<Book> getBooksByAuthorPrefix(String prefix) {
+        List<Book> books = new ArrayList<>();
+
+        // every author starting with the prefix sorts between the prefix itself and
+        // the prefix followed by the highest possible character
+        for (Map<String, NavigableSet<Book>> spellings : booksByAuthor
+                .subMap(prefix, true, prefix + Character.MAX_VALUE, true).values()) {
+            for (NavigableSet<Book> group : spellings.values()) {
+                books.addAll(group);
+            }
+        }
+
+        return books;
+    }
+
+    /**
+     * Getter for the number of products in the catalog.
+     *
+     * @return The number of products in the catalog.
+     */
+    public int size() {
+        return products.size();
+    }
+
+    private void checkNotFrozen() {
+        if (frozen) {
+            throw new IllegalStateException(String.format("Catalog Version %d Is Read-Only", version));
+        }
+    }
+
+    // Every group is a TreeMap sorted by Identifiers.ORDER, and the copy keeps
+    // that order.
+    private static Map<String, Product> copyOf(Map<String, Product> group) {
+        return new TreeMap<>((SortedMap<String, Product>) group);
+    }
+
+    private static <K> void addTo(Map<K, Map<String, Product>> index, K key, Product product) {
+        index.computeIfAbsent(key, k -> new TreeMap<>(Identifiers.ORDER)).put(product.getId(), product);
+    }
+
+    private static <K> void removeFrom(Map<K, Map<String, Product>> index, K key, String productId) {
+        Map<String, Product> matches = index.get(key);
+
+        matches.remove(productId);
+        if (matches.isEmpty()) {
+            index.remove(key);
+        }
+    }
+
+    private static List<Product> page(Collection<Map<String, Product>> groups, int offset, int limit) {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException(String.format("Invalid Page Offset %d Limit %d", offset, limit));
+        }
+
+        List<Product> page = new ArrayList<>();
+
+        for (Map<String, Product> group : groups) {
+            if (page.size() == limit) {
+                break;
+            }
+
+            if (offset >= group.size()) {
+                offset -= group.size(); // skip the whole group without walking it
+                continue;
+            }
+
+            for (Product product : group.values()) {
+                if (page.size() == limit) {
+                    break;
+                }
+
+                if (offset > 0) {
+                    offset--;
+                    continue;
+                }
+
+                page.add(product);
+            }
+        }
+
+        return page;
+    }
+}
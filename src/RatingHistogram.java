@@ -0,0 +1,95 @@
+/**
+ * This class represents the aggregated ratings of a product in the
+ * ECommerceSystem. Instead of storing every rating that was submitted, it
+ * stores how many times each star value from 1 to 5 was given, along with the
+ * total number of ratings and the sum of all of them.
+ *
+ * Adding a rating and reading any of the aggregated values take constant time,
+ * regardless of how many ratings have been submitted. The histogram is
+ * thread-safe.
+ *
+ * @author Ali Rizvi (501039655)
+ * @see ECommerceSystem
+ * @see Product
+ */
+public class RatingHistogram {
+    public static final int MIN_RATING = 1;
+    public static final int MAX_RATING = 5;
+
+    private final long[] counts = new long[MAX_RATING - MIN_RATING + 1];
+    private long total;
+    private long sum;
+
+    /**
+     * Adds a rating to this histogram.
+     *
+     * @param rating The rating to add, from {@link #MIN_RATING} to
+     *               {@link #MAX_RATING}.
+     *
+     * @throws IllegalArgumentException If the rating is out of range.
+     */
+    public void add(int rating) {
+        add(rating, 1);
+    }
+
+    /**
+     * Adds a number of identical ratings to this histogram at once.
+     *
+     * @param rating The rating to add, from {@link #MIN_RATING} to
+     *               {@link #MAX_RATING}.
+     * @param count  The number of times the rating was given.
+     *
+     * @throws IllegalArgumentException If the rating is out of range.
+     */
+    public synchronized void add(int rating, long count) {
+        if (rating < MIN_RATING || rating > MAX_RATING) {
+            throw new IllegalArgumentException(String.format("Invalid Rating: %d", rating));
+        }
+
+        counts[rating - MIN_RATING] += count;
+        total += count;
+        sum += rating * count;
+    }
+
+    /**
+     * Getter for the number of times a specific rating was given.
+     *
+     * @param rating The rating, from {@link #MIN_RATING} to {@link #MAX_RATING}.
+     * @return The number of times the rating was given, or 0 if the rating is out
+     *         of range.
+     */
+    public synchronized long getCount(int rating) {
+        if (rating < MIN_RATING || rating > MAX_RATING) {
+            return 0;
+        }
+
+        return counts[rating - MIN_RATING];
+    }
+
+    /**
+     * Getter for the total number of ratings given.
+     *
+     * @return The total number of ratings given.
+     */
+    public synchronized long getTotal() {
+        return total;
+    }
+
+    /**
+     * Getter for the sum of all ratings given.
+     *
+     * @return The sum of all ratings given.
+     */
+    public synchronized long getSum() {
+        return sum;
+    }
+
+    /**
+     * Getter for the average of all ratings given.
+     *
+     * @return The average of all ratings given, or 0 if no ratings were given.
+     */
+    public synchronized double getAverage() {
+        return total == 0 ? 0 : (double) sum / total;
+    }
+}
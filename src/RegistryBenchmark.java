@@ -0,0 +1,107 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * This class benchmarks finding customers by their ID in the
+ * {@link CustomerRegistry}, against scanning a list of every customer, which
+ * is how the ECommerceSystem used to find them. A lookup in the registry hashes
+ * the ID once however many customers are registered, and only slows down as
+ * the customers stop fitting in the processor caches, while a scan compares
+ * the ID against every customer before the one it finds.
+ *
+ * Every count of customers is measured in several rounds, and the fastest
+ * round is reported, in nanoseconds per lookup. Scans are only measured for as
+ * many lookups as a fixed budget of comparisons allows, so large counts do not
+ * take minutes.
+ *
+ * Run with {@code java RegistryBenchmark [customer count...]} from the
+ * directory the sources were compiled to.
+ *
+ * @author Ali Rizvi (501039655)
+ * @see CustomerRegistry
+ */
+public class RegistryBenchmark {
+    private static final int[] DEFAULT_COUNTS = { 1_000, 10_000, 100_000, 1_000_000 };
+    private static final int FIRST_CUSTOMER_ID = 900;
+    private static final int ROUNDS = 5;
+    private static final int LOOKUPS = 1_000_000;
+    private static final long SCAN_COMPARISONS = 50_000_000L;
+
+    private static volatile int sink; // keeps the lookups from being optimized away
+
+    public static void main(String[] args) {
+        int[] counts = args.length > 0 ? Arrays.stream(args).mapToInt(Integer::parseInt).toArray() : DEFAULT_COUNTS;
+
+        System.out.printf("%10s %16s %16s%n", "Customers", "Registry ns/op", "Scan ns/op");
+
+        for (int count : counts) {
+            CustomerRegistry registry = new CustomerRegistry();
+            List<Customer> list = new ArrayList<>(count);
+
+            for (int i = 0; i < count; i++) {
+                Customer customer = new Customer(Integer.toString(FIRST_CUSTOMER_ID + i), "Customer " + i,
+                        "Address " + i);
+
+                registry.add(customer);
+                list.add(customer);
+            }
+
+            // the IDs are created up front, as a request would parse them before the lookup
+            Random random = new Random(count);
+            String[] ids = new String[LOOKUPS];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = Integer.toString(FIRST_CUSTOMER_ID + random.nextInt(count));
+            }
+
+            int scans = (int) Math.max(1, Math.min(LOOKUPS, SCAN_COMPARISONS / count));
+
+            double registryCost = Double.MAX_VALUE;
+            double scanCost = Double.MAX_VALUE;
+
+            for (int round = 0; round < ROUNDS; round++) {
+                registryCost = Math.min(registryCost, lookUp(registry, ids));
+                scanCost = Math.min(scanCost, scan(list, ids, scans));
+            }
+
+            System.out.printf("%10d %16.1f %16.1f%n", count, registryCost, scanCost);
+        }
+    }
+
+    // Returns the nanoseconds per lookup of finding every ID in the registry.
+    private static double lookUp(CustomerRegistry registry, String[] ids) {
+        int found = 0;
+        long start = System.nanoTime();
+
+        for (String id : ids) {
+            found += registry.get(id).getName().length();
+        }
+
+        long elapsed = System.nanoTime() - start;
+        sink += found;
+
+        return (double) elapsed / ids.length;
+    }
+
+    // Returns the nanoseconds per lookup of finding the first IDs by scanning the
+    // list.
+    private static double scan(List<Customer> list, String[] ids, int lookups) {
+        int found = 0;
+        long start = System.nanoTime();
+
+        for (int i = 0; i < lookups; i++) {
+            for (Customer customer : list) {
+                if (customer.getId().equals(ids[i])) {
+                    found += customer.getName().length();
+                    break;
+                }
+            }
+        }
+
+        long elapsed = System.nanoTime() - start;
+        sink += found;
+
+        return (double) elapsed / lookups;
+    }
+}
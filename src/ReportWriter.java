@@ -0,0 +1,218 @@
+import java.io.PrintStream;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+/**
+ * This class renders the rows of the listings of the ECommerceSystem into a
+ * reusable buffer, and writes the buffer to the console in large chunks.
+ * Printing every row with {@link String#format(String, Object...)} parses the
+ * format, creates several temporary strings, and takes the lock of the console
+ * once per row. Rows rendered through this class are padded and formatted by
+ * hand instead, straight into the buffer.
+ *
+ * The output is identical to what {@link String#format(String, Object...)}
+ * produces for the same values in the default locale. Numbers are only
+ * formatted by hand when the default locale writes them with ASCII digits and
+ * a period as the decimal separator, and with the formatter otherwise.
+ *
+ * A writer without a console only renders into its buffer, which
+ * {@link #toString()} returns. A writer is not thread-safe, every listing
+ * renders through its own.
+ *
+ * @author Ali Rizvi (501039655)
+ * @see ECommerceSystem
+ * @see Product
+ * @see ProductOrder
+ * @see Customer
+ */
+public class ReportWriter {
+    private static final int FLUSH_THRESHOLD = 1 << 16;
+    private static final int INITIAL_CAPACITY = 256;
+
+    // Fixed point numbers are rounded by hand only below this scaled value, where
+    // scaling them is off by far less than the margin, and only when they are
+    // further than the margin from a tie. The formatter rounds ties up based on
+    // the shortest decimal form of the number, which is left to it.
+    private static final double MAX_FIXED = 1e12;
+    private static final double TIE_MARGIN = 1e-3;
+    private static final long[] POWERS_OF_TEN = { 1, 10, 100, 1_000, 10_000, 100_000, 1_000_000 };
+
+    private final PrintStream out;
+    private final StringBuilder buffer = new StringBuilder(INITIAL_CAPACITY);
+    private final boolean plain;
+
+    /**
+     * Constructs a new writer that only renders into its buffer.
+     */
+    public ReportWriter() {
+        this(null);
+    }
+
+    /**
+     * Constructs a new writer that writes to a console.
+     *
+     * @param out The console to write to, or null to only render into the buffer.
+     */
+    public ReportWriter(PrintStream out) {
+        this.out = out;
+        this.plain = isPlain(Locale.getDefault(Locale.Category.FORMAT));
+    }
+
+    /**
+     * Appends a string, as {@code %s} would.
+     *
+     * @param value The string to append, which is written as "null" if it is null.
+     * @return This writer.
+     */
+    public ReportWriter append(String value) {
+        buffer.append(value);
+        return flushIfFull();
+    }
+
+    /**
+     * Appends a character.
+     *
+     * @param c The character to append.
+     * @return This writer.
+     */
+    public ReportWriter append(char c) {
+        buffer.append(c);
+        return flushIfFull();
+    }
+
+    /**
+     * Appends an object as a string padded on the right, as {@code %-Ns} would.
+     *
+     * @param value The object to append.
+     * @param width The minimum width of the field.
+     * @return This writer.
+     */
+    public ReportWriter appendLeftAligned(Object value, int width) {
+        int start = buffer.length();
+
+        buffer.append(value);
+        pad(width - (buffer.length() - start));
+        return flushIfFull();
+    }
+
+    /**
+     * Appends an object as a string padded on the left, as {@code %Ns} would.
+     *
+     * @param value The object to append.
+     * @param width The minimum width of the field.
+     * @return This writer.
+     */
+    public ReportWriter appendRightAligned(Object value, int width) {
+        String text = String.valueOf(value);
+
+        pad(width - text.length());
+        buffer.append(text);
+        return flushIfFull();
+    }
+
+    /**
+     * Appends a whole number, as {@code %d} would.
+     *
+     * @param value The number to append.
+     * @return This writer.
+     */
+    public ReportWriter appendNumber(long value) {
+        if (plain) {
+            buffer.append(value);
+        } else {
+            buffer.append(String.format("%d", value));
+        }
+
+        return flushIfFull();
+    }
+
+    /**
+     * Appends a number in fixed point notation padded on the left, as
+     * {@code %N.Pf} would.
+     *
+     * @param value     The number to append.
+     * @param width     The minimum width of the field.
+     * @param precision The number of digits after the decimal separator, from 1
+     *                  to 6.
+     * @return This writer.
+     */
+    public ReportWriter appendFixed(double value, int width, int precision) {
+        long scale = POWERS_OF_TEN[precision];
+        double scaled = value * scale;
+        double floor = Math.floor(scaled);
+
+        // negative numbers, -0.0, NaN, and infinities are left to the formatter
+        if (!plain || !(scaled >= 0) || scaled >= MAX_FIXED || Math.abs(scaled - floor - 0.5) < TIE_MARGIN
+                || (scaled == 0 && 1 / value < 0)) {
+            return appendRightAligned(String.format("%." + precision + "f", value), width);
+        }
+
+        long units = (long) floor + (scaled - floor > 0.5 ? 1 : 0);
+        long whole = units / scale;
+        long fraction = units % scale;
+
+        int length = digits(whole) + 1 + precision;
+        pad(width - length);
+
+        buffer.append(whole).append('.');
+        for (long power = scale / 10; power > 0; power /= 10) {
+            buffer.append((char) ('0' + fraction / power % 10));
+        }
+
+        return flushIfFull();
+    }
+
+    /**
+     * Writes everything rendered so far to the console, if the writer has one.
+     */
+    public void flush() {
+        if (out != null && buffer.length() > 0) {
+            out.append(buffer);
+            buffer.setLength(0);
+        }
+    }
+
+    /**
+     * Overrides {@link Object#toString()}. This implementation returns everything
+     * rendered since the buffer was last written to the console.
+     *
+     * @return The contents of the buffer.
+     */
+    @Override
+    public String toString() {
+        return buffer.toString();
+    }
+
+    private ReportWriter flushIfFull() {
+        if (buffer.length() >= FLUSH_THRESHOLD) {
+            flush();
+        }
+
+        return this;
+    }
+
+    private void pad(int count) {
+        for (int i = 0; i < count; i++) {
+            buffer.append(' ');
+        }
+    }
+
+    private static int digits(long value) {
+        int digits = 1;
+
+        while (value >= 10) {
+            value /= 10;
+            digits++;
+        }
+
+        return digits;
+    }
+
+    // Checks if a locale formats numbers with ASCII digits, a period, and a hyphen
+    // as the minus sign.
+    private static boolean isPlain(Locale locale) {
+        DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(locale);
+
+        return symbols.getZeroDigit() == '0' && symbols.getDecimalSeparator() == '.' && symbols.getMinusSign() == '-';
+    }
+}
@@ -0,0 +1,133 @@
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * This class represents the number of times each product has been ordered
+ * through the ECommerceSystem, counted without locks. Each product has a pair
+ * of striped counters, one for orders and one for cancellations, so threads
+ * ordering the same product add to different cells instead of contending on a
+ * single value, and no update is ever lost.
+ *
+ * Both counters only ever grow, and a cancellation is always recorded after
+ * the order it cancels. Reading the cancellations before the orders therefore
+ * never counts a cancellation without its order, so a count read while orders
+ * are being placed and cancelled lies between the count at the start and the
+ * end of the read, and is never negative.
+ *
+ * Readers that keep their own view of the counts, such as {@link SalesRanking},
+ * can visit only the products that changed since their last visit with
+ * {@link #drainChanged(ObjLongConsumer)}.
+ *
+ * @author Ali Rizvi (501039655)
+ * @see SalesRanking
+ * @see ECommerceSystem
+ */
+public class SalesCounters {
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Queue<Counter> changed = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Records that a product was ordered.
+     *
+     * @param productId The unique identifier of the product.
+     */
+    public void recordOrder(String productId) {
+        Counter counter = counterFor(productId);
+
+        counter.ordered.increment();
+        markChanged(counter);
+    }
+
+    /**
+     * Records that a product was ordered a number of times at once, for example
+     * when the counts are restored from a snapshot.
+     *
+     * @param productId The unique identifier of the product.
+     * @param count     The number of orders.
+     */
+    public void recordOrders(String productId, long count) {
+        Counter counter = counterFor(productId);
+
+        counter.ordered.add(count);
+        markChanged(counter);
+    }
+
+    /**
+     * Records that an order of a product was cancelled. The order must have been
+     * recorded before.
+     *
+     * @param productId The unique identifier of the product.
+     */
+    public void recordCancel(String productId) {
+        Counter counter = counterFor(productId);
+
+        counter.cancelled.increment();
+        markChanged(counter);
+    }
+
+    /**
+     * Getter for the number of times a product has been ordered, minus the orders
+     * that were cancelled.
+     *
+     * @param productId The unique identifier of the product.
+     * @return The number of times the product has been ordered.
+     */
+    public long getCount(String productId) {
+        Counter counter = counters.get(productId);
+
+        return counter == null ? 0 : counter.count();
+    }
+
+    /**
+     * Visits every product whose count changed since it was last visited, with its
+     * current count. A product that changes again while it is being visited will
+     * be visited again by the next call.
+     *
+     * @param visitor The visitor that receives the unique identifier and the count
+     *                of each changed product.
+     */
+    public void drainChanged(ObjLongConsumer<String> visitor) {
+        for (Counter counter = changed.poll(); counter != null; counter = changed.poll()) {
+            // clear the flag before reading, so any update after the read marks the
+            // counter as changed again
+            counter.changed.set(false);
+            visitor.accept(counter.productId, counter.count());
+        }
+    }
+
+    private Counter counterFor(String productId) {
+        Counter counter = counters.get(productId); // avoids locking a bin once the counter exists
+
+        return counter != null ? counter : counters.computeIfAbsent(productId, Counter::new);
+    }
+
+    private void markChanged(Counter counter) {
+        // the flag is usually already set while a product is selling, in which case
+        // this is a single read
+        if (!counter.changed.get() && counter.changed.compareAndSet(false, true)) {
+            changed.add(counter);
+        }
+    }
+
+    private static class Counter {
+        private final String productId;
+        private final LongAdder ordered = new LongAdder();
+        private final LongAdder cancelled = new LongAdder();
+        private final AtomicBoolean changed = new AtomicBoolean();
+
+        private Counter(String productId) {
+            this.productId = productId;
+        }
+
+        private long count() {
+            long cancelledCount = cancelled.sum(); // before the orders, see the class comment
+
+            return ordered.sum() - cancelledCount;
+        }
+    }
+}
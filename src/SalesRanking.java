@@ -0,0 +1,150 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * This class represents the ranking of products by how many times they have
+ * been ordered through the ECommerceSystem. Orders and cancellations are
+ * recorded in {@link SalesCounters} without locks, so recording a sale never
+ * waits for other sales or for a report.
+ *
+ * The ranking itself is kept sorted, and is brought up to date whenever it is
+ * read by re-ranking only the products that sold since the last read, each in
+ * logarithmic time. The best selling products can then be read without
+ * sorting. Reads lock out each other but never the threads recording sales.
+ *
+ * Products are ranked by their order count in descending order. Products with
+ * the same count are ranked by their unique identifier. The ranking is
+ * thread-safe.
+ *
+ * @author Ali Rizvi (501039655)
+ * @see SalesCounters
+ * @see ECommerceSystem
+ * @see Product
+ */
+public class SalesRanking {
+    private static final Comparator<Sales> BY_COUNT = Comparator.comparingInt(Sales::getCount).reversed()
+            .thenComparing(Sales::getProductId, Identifiers.ORDER);
+
+    private final SalesCounters counters = new SalesCounters();
+
+    // The ranking as of the last read, guarded by this.
+    private final Map<String, Sales> salesByProduct = new HashMap<>();
+    private final NavigableSet<Sales> ranking = new TreeSet<>(BY_COUNT);
+
+    /**
+     * Records that a product was ordered. A product enters the ranking the first
+     * time it is ordered, and stays in the ranking even if its count drops back to
+     * 0.
+     *
+     * @param productId The unique identifier of the product.
+     */
+    public void recordOrder(String productId) {
+        counters.recordOrder(productId);
+    }
+
+    /**
+     * Records that a product was ordered a number of times at once. The product
+     * enters the ranking even if the count is 0.
+     *
+     * @param productId The unique identifier of the product.
+     * @param count     The number of orders.
+     */
+    public void recordOrders(String productId, long count) {
+        counters.recordOrders(productId, count);
+    }
+
+    /**
+     * Records that an order of a product was cancelled. The order must have been
+     * recorded before.
+     *
+     * @param productId The unique identifier of the product.
+     */
+    public void recordCancel(String productId) {
+        counters.recordCancel(productId);
+    }
+
+    /**
+     * Getter for the number of times a product has been ordered.
+     *
+     * @param productId The unique identifier of the product.
+     * @return The number of times the product has been ordered.
+     */
+    public int getCount(String productId) {
+        return (int) counters.getCount(productId);
+    }
+
+    /**
+     * Getter for the best selling products.
+     *
+     * @param limit The maximum number of products to return.
+     * @return The sales of the best selling products, in ranking order.
+     */
+    public synchronized List<Sales> getTop(int limit) {
+        counters.drainChanged(this::rerank);
+
+        List<Sales> top = new ArrayList<>();
+
+        for (Sales sales : ranking) {
+            if (top.size() >= limit) {
+                break;
+            }
+
+            top.add(sales);
+        }
+
+        return top;
+    }
+
+    private void rerank(String productId, long count) {
+        Sales previous = salesByProduct.get(productId);
+        Sales updated = new Sales(productId, (int) count);
+
+        if (previous != null) {
+            ranking.remove(previous);
+        }
+
+        ranking.add(updated);
+        salesByProduct.put(productId, updated);
+    }
+
+    /**
+     * This class represents the number of times a specific product has been
+     * ordered. Instances are immutable, a new instance replaces the old one every
+     * time the count changes.
+     *
+     * @author Ali Rizvi (501039655)
+     * @see SalesRanking
+     */
+    public static class Sales {
+        private final String productId;
+        private final int count;
+
+        private Sales(String productId, int count) {
+            this.productId = productId;
+            this.count = count;
+        }
+
+        /**
+         * Getter for the unique identifier of the product.
+         *
+         * @return The unique identifier of the product.
+         */
+        public String getProductId() {
+            return productId;
+        }
+
+        /**
+         * Getter for the number of times the product has been ordered.
+         *
+         * @return The number of times the product has been ordered.
+         */
+        public int getCount() {
+            return count;
+        }
+    }
+}
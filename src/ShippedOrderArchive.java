@@ -0,0 +1,765 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.zip.CRC32;
+
+/**
+ * This class represents the archive of the orders shipped through the
+ * ECommerceSystem. Shipped orders never change again, so instead of keeping
+ * every one of them in memory, they are appended to segment files on disk, and
+ * only the orders of the segment being appended to are kept in memory. That
+ * recent window is bounded by the size of a segment.
+ *
+ * Once a segment is full, it is sealed: it is forced to disk, and an index
+ * file is written next to it. The index holds every order number of the
+ * segment in ascending order, and every order of the segment sorted by
+ * customer ID and then order number, each with the position of the order in
+ * the segment. Both are packed ints, so a sealed segment costs no heap at all.
+ * The index is memory-mapped, and looked up with binary search.
+ *
+ * Reading every shipped order, or every shipped order of a customer, streams
+ * the orders from disk in ascending order of order number, by merging the
+ * sorted indexes of every segment and the recent window. Orders are stored by
+ * the IDs of their product and customer, and turned back into
+ * {@link ProductOrder} objects by a {@link Resolver} as they are read.
+ *
+ * An archive without a directory keeps every order in memory, and never seals
+ * a segment.
+ *
+ * The archive is thread-safe. Appending is serialized, reads never wait for
+ * appends once they have started.
+ *
+ * @author Ali Rizvi (501039655)
+ * @see ECommerceSystem
+ * @see ProductOrder
+ */
+public class ShippedOrderArchive implements AutoCloseable {
+    /**
+     * The number of orders of every segment when no segment size is given.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 4096;
+
+    private static final int INDEX_MAGIC = 0x58444953; // "SIDX"
+    private static final int ORDER_ENTRY_SIZE = 8;
+    private static final int CUSTOMER_ENTRY_SIZE = 12;
+    private static final String SEGMENT_PREFIX = "shipped-";
+    private static final String DATA_SUFFIX = ".dat";
+    private static final String INDEX_SUFFIX = ".idx";
+
+    /**
+     * This interface turns the stored fields of a shipped order back into an
+     * order.
+     *
+     * @author Ali Rizvi (501039655)
+     * @see ShippedOrderArchive
+     */
+    public interface Resolver {
+        /**
+         * Resolves a shipped order.
+         *
+         * @param orderNumber    The order number of the order.
+         * @param productId      The product ID of the product that was ordered.
+         * @param customerId     The customer ID of the customer that placed the
+         *                       order.
+         * @param productOptions The product options of the order.
+         * @return The order, or null if it can no longer be resolved, for example
+         *         because its product was removed.
+         */
+        ProductOrder resolve(String orderNumber, String productId, String customerId, String productOptions);
+    }
+
+    private final Path directory;
+    private final int segmentSize;
+    private final Resolver resolver;
+
+    // The sealed segments in the order they were sealed, replaced as a whole when
+    // a segment is sealed, so readers can use it without a lock.
+    private volatile List<Segment> sealed = Collections.emptyList();
+
+    // The recent window and the segment file it is appended to, guarded by this.
+    private final IntMap<Shipment> window = new IntMap<>();
+    private long segment;
+    private FileChannel channel;
+    private int position;
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+    /**
+     * Constructs a new archive that keeps every order in memory.
+     *
+     * @param resolver The resolver that turns stored orders back into orders.
+     */
+    public ShippedOrderArchive(Resolver resolver) {
+        this.directory = null;
+        this.segmentSize = Integer.MAX_VALUE;
+        this.resolver = resolver;
+    }
+
+    /**
+     * Constructs a new archive that spills orders to segments in a directory. The
+     * segments already in the directory are opened, and the orders of the segment
+     * that was not sealed yet are read back into the recent window.
+     *
+     * @param directory   The directory of the segments, which is created if it does
+     *                    not exist.
+     * @param segmentSize The number of orders of every segment.
+     * @param resolver    The resolver that turns stored orders back into orders.
+     *
+     * @throws UncheckedIOException If the segments could not be read.
+     */
+    public ShippedOrderArchive(Path directory, int segmentSize, Resolver resolver) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.resolver = resolver;
+
+        try {
+            Files.createDirectories(directory);
+
+            List<Long> numbers = segments(directory);
+            List<Segment> opened = new ArrayList<>();
+
+            for (long number : numbers) {
+                if (!Files.exists(file(number, INDEX_SUFFIX))) {
+                    // never sealed, or the system stopped while it was being sealed
+                    readWindow(number);
+
+                    if (number != numbers.get(numbers.size() - 1)) {
+                        writeIndex(number);
+                        window.clear();
+                        position = 0;
+                    }
+                }
+
+                if (Files.exists(file(number, INDEX_SUFFIX))) {
+                    opened.add(new Segment(file(number, DATA_SUFFIX), file(number, INDEX_SUFFIX)));
+                }
+            }
+
+            sealed = Collections.unmodifiableList(opened);
+            segment = numbers.isEmpty() ? 1 : numbers.get(numbers.size() - 1);
+
+            if (Files.exists(file(segment, INDEX_SUFFIX))) {
+                segment++; // the last segment is sealed, start a new one
+            }
+
+            channel = FileChannel.open(file(segment, DATA_SUFFIX), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE);
+            channel.truncate(position); // cut off a record that was only partly written
+            channel.position(position);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Archives a shipped order. The order is durable once the archive is synced.
+     *
+     * @param order The order that was shipped.
+     *
+     * @throws UncheckedIOException If a full segment could not be sealed.
+     */
+    public synchronized void add(ProductOrder order) {
+        Shipment shipment = new Shipment(Identifiers.parse(order.getOrderNumber()),
+                Identifiers.parse(order.getProductId()), Identifiers.parse(order.getCustomerId()),
+                order.getProductOptions(), position);
+
+        if (directory != null) {
+            byte[] record = shipment.encode();
+
+            DataOutputStream out = new DataOutputStream(pending);
+            try {
+                out.writeInt(record.length);
+                out.writeInt(checksum(record));
+                out.write(record);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e); // never thrown by an in-memory stream
+            }
+
+            position += 8 + record.length;
+        }
+
+        window.put(shipment.orderNumber, shipment);
+
+        if (window.size() >= segmentSize) {
+            seal();
+        }
+    }
+
+    /**
+     * Checks if an order was archived.
+     *
+     * @param orderNumber The order number of the order.
+     * @return True if the order was archived.
+     */
+    public boolean contains(String orderNumber) {
+        return find(Identifiers.parse(orderNumber)) != null;
+    }
+
+    /**
+     * Finds an archived order.
+     *
+     * @param orderNumber The order number of the order.
+     * @return The order, or null if it was not archived or can no longer be
+     *         resolved.
+     */
+    public ProductOrder get(String orderNumber) {
+        Shipment shipment = find(Identifiers.parse(orderNumber));
+
+        return shipment != null ? shipment.resolve(resolver) : null;
+    }
+
+    /**
+     * Getter for every archived order, streamed from disk in ascending order of
+     * order number. Orders archived after the iterator was created may or may not
+     * be included.
+     *
+     * @return An iterator over every archived order.
+     */
+    public Iterator<ProductOrder> iterator() {
+        List<Cursor> cursors = new ArrayList<>();
+
+        for (Segment s : sealed) {
+            cursors.add(s.orders());
+        }
+
+        synchronized (this) {
+            cursors.add(new WindowCursor(windowOrders(-1, -1)));
+        }
+
+        return new MergeIterator(cursors);
+    }
+
+    /**
+     * Getter for the archived orders of a customer, streamed from disk in
+     * ascending order of order number. Long histories can be read in pages, by
+     * passing the order number of the last order of a page as the cursor for the
+     * next page.
+     *
+     * @param customerId The customer ID of the customer.
+     * @param cursor     The order number of the last order of the previous page, or
+     *                   null to start from the first order.
+     * @return An iterator over the archived orders of the customer after the
+     *         cursor.
+     */
+    public Iterator<ProductOrder> iterator(String customerId, String cursor) {
+        int customer = Identifiers.parse(customerId);
+        int after = cursor == null ? -1 : Identifiers.parse(cursor);
+        List<Cursor> cursors = new ArrayList<>();
+
+        for (Segment s : sealed) {
+            cursors.add(s.ordersOf(customer, after));
+        }
+
+        synchronized (this) {
+            cursors.add(new WindowCursor(windowOrders(customer, after)));
+        }
+
+        return new MergeIterator(cursors);
+    }
+
+    /**
+     * Getter for the highest order number that was archived.
+     *
+     * @return The highest archived order number, or -1 if the archive is empty.
+     */
+    public long getLastOrderNumber() {
+        long last = -1;
+
+        for (Segment s : sealed) {
+            if (s.count > 0) {
+                last = Math.max(last, s.orderNumberAt(s.count - 1));
+            }
+        }
+
+        synchronized (this) {
+            for (Shipment shipment : window.values()) {
+                last = Math.max(last, shipment.orderNumber);
+            }
+        }
+
+        return last;
+    }
+
+    /**
+     * Getter for the number of orders in the recent window, which are the only
+     * orders kept in memory.
+     *
+     * @return The number of orders in memory.
+     */
+    public synchronized int getWindowSize() {
+        return window.size();
+    }
+
+    /**
+     * Forces every archived order to disk.
+     *
+     * @throws UncheckedIOException If the orders could not be written.
+     */
+    public synchronized void sync() {
+        if (directory == null) {
+            return;
+        }
+
+        try {
+            flush();
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Forces every archived order to disk, and closes the archive.
+     *
+     * @throws UncheckedIOException If the orders could not be written.
+     */
+    @Override
+    public synchronized void close() {
+        if (directory == null) {
+            return;
+        }
+
+        sync();
+
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Shipment find(int orderNumber) {
+        synchronized (this) {
+            Shipment shipment = window.get(orderNumber);
+
+            if (shipment != null) {
+                return shipment;
+            }
+        }
+
+        for (Segment s : sealed) {
+            Shipment shipment = s.find(orderNumber);
+
+            if (shipment != null) {
+                return shipment;
+            }
+        }
+
+        return null;
+    }
+
+    // Copies the orders of the window, optionally only those of a customer after
+    // a cursor, in ascending order of order number. Guarded by this.
+    private Shipment[] windowOrders(int customer, int after) {
+        List<Shipment> orders = new ArrayList<>();
+
+        for (int orderNumber : window.sortedKeys()) {
+            Shipment shipment = window.get(orderNumber);
+
+            if (customer == -1 || (shipment.customerId == customer && orderNumber > after)) {
+                orders.add(shipment);
+            }
+        }
+
+        return orders.toArray(new Shipment[0]);
+    }
+
+    // Seals the segment of the window, and starts a new one. Guarded by this.
+    private void seal() {
+        if (directory == null) {
+            return;
+        }
+
+        try {
+            flush();
+            channel.force(false);
+            channel.close();
+
+            writeIndex(segment);
+            Segment s = new Segment(file(segment, DATA_SUFFIX), file(segment, INDEX_SUFFIX));
+
+            List<Segment> next = new ArrayList<>(sealed);
+            next.add(s);
+            sealed = Collections.unmodifiableList(next);
+
+            window.clear();
+            segment++;
+            position = 0;
+            channel = FileChannel.open(file(segment, DATA_SUFFIX), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void flush() throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(pending.toByteArray());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+
+        pending.reset();
+    }
+
+    // Writes the index of a segment from the orders of the window.
+    private void writeIndex(long number) throws IOException {
+        int count = window.size();
+        Shipment[] byOrder = windowOrders(-1, -1);
+        Shipment[] byCustomer = byOrder.clone();
+
+        // a stable sort, so the orders of each customer stay in order number order
+        Arrays.sort(byCustomer, (a, b) -> Integer.compare(a.customerId, b.customerId));
+
+        ByteBuffer buffer = ByteBuffer.allocate(8 + count * (ORDER_ENTRY_SIZE + CUSTOMER_ENTRY_SIZE))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(INDEX_MAGIC).putInt(count);
+
+        for (Shipment shipment : byOrder) {
+            buffer.putInt(shipment.orderNumber).putInt(shipment.offset);
+        }
+
+        for (Shipment shipment : byCustomer) {
+            buffer.putInt(shipment.customerId).putInt(shipment.orderNumber).putInt(shipment.offset);
+        }
+
+        buffer.flip();
+
+        Path index = file(number, INDEX_SUFFIX);
+        Path temp = index.resolveSibling(index.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+
+            out.force(true);
+        }
+
+        Files.move(temp, index, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Reads every complete record of a segment into the window, and leaves the
+    // position at the end of the last one.
+    private void readWindow(long number) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file(number, DATA_SUFFIX)));
+        window.clear();
+        position = 0;
+
+        while (data.remaining() >= 8) {
+            int length = data.getInt();
+            int checksum = data.getInt();
+
+            if (length < 0 || length > data.remaining()) {
+                break;
+            }
+
+            byte[] record = new byte[length];
+            data.get(record);
+
+            if (checksum(record) != checksum) {
+                break;
+            }
+
+            Shipment shipment = Shipment.decode(record, position);
+            window.put(shipment.orderNumber, shipment);
+            position += 8 + length;
+        }
+    }
+
+    private Path file(long number, String suffix) {
+        return directory.resolve(SEGMENT_PREFIX + number + suffix);
+    }
+
+    // Lists the numbers of the segments of a directory, in ascending order.
+    private static List<Long> segments(Path directory) throws IOException {
+        List<Long> numbers = new ArrayList<>();
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + DATA_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+
+                try {
+                    numbers.add(Long.parseLong(
+                            name.substring(SEGMENT_PREFIX.length(), name.length() - DATA_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    // not a segment
+                }
+            }
+        }
+
+        Collections.sort(numbers);
+        return numbers;
+    }
+
+    private static int checksum(byte[] record) {
+        CRC32 crc = new CRC32();
+        crc.update(record);
+
+        return (int) crc.getValue();
+    }
+
+    // A shipped order as it is stored, together with its position in its segment.
+    private static class Shipment {
+        private final int orderNumber;
+        private final int productId;
+        private final int customerId;
+        private final String productOptions;
+        private final int offset;
+
+        private Shipment(int orderNumber, int productId, int customerId, String productOptions, int offset) {
+            this.orderNumber = orderNumber;
+            this.productId = productId;
+            this.customerId = customerId;
+            this.productOptions = productOptions;
+            this.offset = offset;
+        }
+
+        private ProductOrder resolve(Resolver resolver) {
+            return resolver.resolve(Integer.toString(orderNumber), Integer.toString(productId),
+                    Integer.toString(customerId), productOptions);
+        }
+
+        private byte[] encode() {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+
+            try {
+                out.writeInt(orderNumber);
+                out.writeInt(productId);
+                out.writeInt(customerId);
+                out.writeBoolean(productOptions != null);
+                if (productOptions != null) {
+                    out.writeUTF(productOptions);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e); // never thrown by an in-memory stream
+            }
+
+            return bytes.toByteArray();
+        }
+
+        private static Shipment decode(byte[] record, int offset) {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+
+            try {
+                return new Shipment(in.readInt(), in.readInt(), in.readInt(), in.readBoolean() ? in.readUTF() : null,
+                        offset);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e); // the checksum matched, so the record is complete
+            }
+        }
+    }
+
+    // A sealed segment, with its data and index memory-mapped.
+    private static class Segment {
+        private final ByteBuffer data;
+        private final ByteBuffer index;
+        private final int count;
+
+        private Segment(Path dataFile, Path indexFile) throws IOException {
+            try (FileChannel dataChannel = FileChannel.open(dataFile, StandardOpenOption.READ);
+                    FileChannel indexChannel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+                data = dataChannel.map(FileChannel.MapMode.READ_ONLY, 0, dataChannel.size());
+                index = indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, indexChannel.size())
+                        .order(ByteOrder.LITTLE_ENDIAN);
+            }
+
+            if (index.getInt(0) != INDEX_MAGIC) {
+                throw new IOException(String.format("Index File %s Has Unknown Format", indexFile));
+            }
+
+            count = index.getInt(4);
+        }
+
+        private int orderNumberAt(int i) {
+            return index.getInt(8 + i * ORDER_ENTRY_SIZE);
+        }
+
+        private int customerAt(int i) {
+            return index.getInt(8 + count * ORDER_ENTRY_SIZE + i * CUSTOMER_ENTRY_SIZE);
+        }
+
+        private int customerOrderNumberAt(int i) {
+            return index.getInt(8 + count * ORDER_ENTRY_SIZE + i * CUSTOMER_ENTRY_SIZE + 4);
+        }
+
+        private Shipment find(int orderNumber) {
+            int low = 0;
+            int high = count - 1;
+
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int found = orderNumberAt(mid);
+
+                if (found < orderNumber) {
+                    low = mid + 1;
+                } else if (found > orderNumber) {
+                    high = mid - 1;
+                } else {
+                    return read(index.getInt(8 + mid * ORDER_ENTRY_SIZE + 4));
+                }
+            }
+
+            return null;
+        }
+
+        private Shipment read(int offset) {
+            byte[] record = new byte[data.getInt(offset)];
+            data.get(offset + 8, record);
+
+            return Shipment.decode(record, offset);
+        }
+
+        // A cursor over every order of the segment.
+        private Cursor orders() {
+            return new Cursor() {
+                private int i = -1;
+
+                @Override
+                boolean advance() {
+                    return ++i < count;
+                }
+
+                @Override
+                int orderNumber() {
+                    return orderNumberAt(i);
+                }
+
+                @Override
+                Shipment read() {
+                    return Segment.this.read(index.getInt(8 + i * ORDER_ENTRY_SIZE + 4));
+                }
+            };
+        }
+
+        // A cursor over the orders of a customer after an order number.
+        private Cursor ordersOf(int customer, int after) {
+            // the first entry of the customer after the order number
+            int low = 0;
+            int high = count;
+
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                int found = customerAt(mid);
+
+                if (found < customer || (found == customer && customerOrderNumberAt(mid) <= after)) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+
+            int first = low;
+
+            return new Cursor() {
+                private int i = first - 1;
+
+                @Override
+                boolean advance() {
+                    return ++i < count && customerAt(i) == customer;
+                }
+
+                @Override
+                int orderNumber() {
+                    return customerOrderNumberAt(i);
+                }
+
+                @Override
+                Shipment read() {
+                    return Segment.this.read(index.getInt(8 + count * ORDER_ENTRY_SIZE + i * CUSTOMER_ENTRY_SIZE + 8));
+                }
+            };
+        }
+    }
+
+    // A position in a sequence of orders sorted by order number.
+    private abstract static class Cursor {
+        // Moves to the next order, and returns false if there is none.
+        abstract boolean advance();
+
+        abstract int orderNumber();
+
+        abstract Shipment read();
+    }
+
+    private static class WindowCursor extends Cursor {
+        private final Shipment[] orders;
+        private int i = -1;
+
+        private WindowCursor(Shipment[] orders) {
+            this.orders = orders;
+        }
+
+        @Override
+        boolean advance() {
+            return ++i < orders.length;
+        }
+
+        @Override
+        int orderNumber() {
+            return orders[i].orderNumber;
+        }
+
+        @Override
+        Shipment read() {
+            return orders[i];
+        }
+    }
+
+    // Merges sorted cursors into a single sequence of resolved orders.
+    private class MergeIterator implements Iterator<ProductOrder> {
+        private final PriorityQueue<Cursor> queue = new PriorityQueue<>(
+                (a, b) -> Integer.compare(a.orderNumber(), b.orderNumber()));
+        private ProductOrder next;
+
+        private MergeIterator(List<Cursor> cursors) {
+            for (Cursor cursor : cursors) {
+                if (cursor.advance()) {
+                    queue.add(cursor);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && !queue.isEmpty()) {
+                Cursor cursor = queue.poll();
+                next = cursor.read().resolve(resolver); // null if it can no longer be resolved
+
+                if (cursor.advance()) {
+                    queue.add(cursor);
+                }
+            }
+
+            return next != null;
+        }
+
+        @Override
+        public ProductOrder next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            ProductOrder order = next;
+            next = null;
+            return order;
+        }
+    }
+}
@@ -1,130 +1,157 @@
 import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * This class extends the Product class to create a Shoe product that can be
- * ordered via our ECommerceSystem. Shoes have stock options with sizes from 6
- * to 10, and colors between black and brown.
+ * ordered via our ECommerceSystem. Each shoe declares the sizes and colors it
+ * is sold in, and stores the stock of every combination of them.
  *
  * Shoes can be ordered by customers. Each order can have variable options by
- * combining the sizes 6 to 10 and colors black and brown. The system will then
- * create a new shoe order for that customer, and manage it until the order is
- * either shipped or cancelled.
+ * combining one of the sizes and one of the colors of the shoe. The system will
+ * then create a new shoe order for that customer, and manage it until the order
+ * is either shipped or cancelled.
  *
  * @author Ali Rizvi (501039655)
- * @see ECSEcommerceSystem
+ * @see ECommerceSystem
  * @see Product
  * @see Customer
  * @see ProductOrder
  */
 public class Shoes extends Product {
-    // Key represents the colors, value represents the stock of that color, at an
-    // integer array of 5 elements, storing data for sizes 6 to 10. To access the
-    // array, 0th index should be considered stock for size 6, 1st index for size 7,
-    // and so on until size 10.
-    private final Map<String, int[]> stock;
+    /**
+     * The sizes shoes are sold in when they do not declare their own.
+     */
+    public static final String[] DEFAULT_SIZES = { "6", "7", "8", "9", "10" };
+
+    // The stock of every variant is kept by the product, where the variant of a
+    // color and size is color * sizes.length + size. All sizes of a color are
+    // next to each other.
+    private final String[] sizes;
+    private final String[] colors;
 
     /**
-     * Constructs a new shoe with the given name, id, price, and stock counts.
+     * Constructs a new shoe with the given name, id, price, and stock counts. The
+     * shoe is sold in the {@link #DEFAULT_SIZES}, and in the colors of the stock
+     * counts.
      *
      * @param name  The name of the product.
      * @param id    The unique identifier of the product, generated by the
      *              {@link ECommerceSystem}.
      * @param price The price of the product.
-     * @param stock The stock counts for each size and color.
+     * @param stock The stock counts for each color. Each color maps to an array
+     *              with the stock of each of the {@link #DEFAULT_SIZES}, in
+     *              order.
+     *
+     * @throws IllegalArgumentException If the stock of a color does not have
+     *                                  exactly one count for each size.
      */
     public Shoes(String name, String id, double price, Map<String, int[]> stock) {
-        super(name, id, price, 0, Category.CLOTHING);
-
-        this.stock = stock;
+        this(name, id, price, DEFAULT_SIZES, new TreeMap<>(stock).keySet().toArray(new String[0]),
+                flatten(new TreeMap<>(stock), DEFAULT_SIZES.length));
     }
 
     /**
-     * Overrides {@link Product#validOptions(String)}. This implementation only
-     * accepts a combination of sizes 6 to 10 and colors black and brown. Size must
-     * be declared first, followed by a space to separate the size and color, and
-     * then finally the color. It is case-insensitive. Internally, it uses
-     * {@link String#equalsIgnoreCase(String)}.
+     * Constructs a new shoe with the given name, id, price, sizes, colors, and
+     * stock counts.
+     *
+     * @param name   The name of the product.
+     * @param id     The unique identifier of the product, generated by the
+     *               {@link ECommerceSystem}.
+     * @param price  The price of the product.
+     * @param sizes  The sizes the shoe is sold in.
+     * @param colors The colors the shoe is sold in.
+     * @param stock  The stock counts of every combination of color and size. The
+     *               stock of a color and size is found at index
+     *               {@code color * sizes.length + size}.
      *
-     * @param productOptions The product options to validate.
-     * @return True if the product options are valid for this product.
+     * @throws IllegalArgumentException If there is not exactly one stock count
+     *                                  for each combination of color and size.
      */
-    @Override
-    public boolean validOptions(String productOptions) {
-        if (super.validOptions(productOptions)) {
-            return false;
-        }
+    public Shoes(String name, String id, double price, String[] sizes, String[] colors, int[] stock) {
+        super(name, id, price, toVariantStock(id, sizes, colors, stock), Category.CLOTHING);
 
-        String[] split = productOptions.split(" ");
-        if (split.length != 2) {
-            return false;
-        }
-
-        String size = split[0];
-        String color = split[1];
-
-        return (size.equals("6") || size.equals("7") || size.equals("8") || size.equals("9") || size.equals("10"))
-                && (color.equalsIgnoreCase("Black") || color.equalsIgnoreCase("Brown"));
+        this.sizes = sizes.clone();
+        this.colors = colors.clone();
     }
 
     /**
-     * Overrides {@link Product#hasStock(String)}. This implementation checks if
-     * there is stock available for the specified product options. It only accepts a
-     * combination of sizes 6 to 10 and colors black and brown. Size must be
-     * declared first, followed by a space to separate the size and color, and then
-     * finally the color. It is case-insensitive.
+     * Getter for the sizes the shoe is sold in.
      *
-     * @param productOptions The product options to check stock for.
-     * @return True if there is stock available for the product options specified.
+     * @return A copy of the sizes the shoe is sold in.
      */
-    @Override
-    public boolean hasStock(String productOptions) {
-        String[] split = productOptions.split(" ");
-
-        String size = split[0];
-        String color = split[1].toLowerCase();
-
-        return stock.get(color)[getIndex(size)] > 0;
+    public String[] getSizes() {
+        return sizes.clone();
     }
 
     /**
-     * Overrides {@link Product#reduceStock(String)}. This implementation reduces
-     * the stock for the specified product options. It only accepts a combination of
-     * sizes 6 to 10 and colors black and brown. Size must be declared first,
-     * followed by a space to separate the size and color, and then finally the
-     * color. It is case-insensitive.
+     * Getter for the colors the shoe is sold in.
      *
-     * @param productOptions The product options to reduce stock for.
+     * @return A copy of the colors the shoe is sold in.
      */
-    @Override
-    public void reduceStock(String productOptions) {
-        String[] split = productOptions.split(" ");
-
-        String size = split[0];
-        String color = split[1].toLowerCase();
-
-        stock.get(color)[getIndex(size)]--;
+    public String[] getColors() {
+        return colors.clone();
     }
 
     /**
-     * Overrides {@link Product#returnStock(String)}. This implementation increases
-     * the stock for the specified product options. It only accepts a combination of
-     * sizes 6 to 10 and colors black and brown. Size must be declared first,
-     * followed by a space to separate the size and color, and then finally the
-     * color. It is case-insensitive.
+     * Overrides {@link Product#parseOptions(String)}. This implementation only
+     * accepts a combination of one of the sizes and one of the colors of the
+     * shoe. Size must be declared first, followed by a space to separate the size
+     * and color, and then finally the color. It is case-insensitive. Internally, it
+     * uses {@link String#regionMatches(boolean, int, String, int, int)}, so no
+     * strings are allocated.
      *
-     * @param productOptions The product options to increase stock for.
+     * @param productOptions The product options to parse.
+     * @return The variant of this shoe for the product options specified, or
+     *         {@link Product#INVALID_VARIANT} if the product options are not
+     *         valid.
      */
     @Override
-    public void returnStock(String productOptions) {
-        String[] split = productOptions.split(" ");
+    public int parseOptions(String productOptions) {
+        int space = productOptions == null ? -1 : productOptions.indexOf(' ');
+        if (space <= 0) {
+            return INVALID_VARIANT;
+        }
+
+        int size = indexOf(sizes, productOptions, 0, space);
+        int color = indexOf(colors, productOptions, space + 1, productOptions.length() - space - 1);
 
-        String size = split[0];
-        String color = split[1].toLowerCase();
+        return size < 0 || color < 0 ? INVALID_VARIANT : color * sizes.length + size;
+    }
+
+    // Finds the option matching the region of the product options exactly,
+    // ignoring case.
+    private static int indexOf(String[] options, String productOptions, int offset, int length) {
+        for (int i = 0; i < options.length; i++) {
+            if (options[i].length() == length && productOptions.regionMatches(true, offset, options[i], 0, length)) {
+                return i;
+            }
+        }
 
-        stock.get(color)[getIndex(size)]++;
+        return -1;
     }
 
-    private int getIndex(String size) {
-        return Integer.parseInt(size) - 6; // size 6: 0 index, size 7: 1 index etc.
+    private static VariantStock toVariantStock(String id, String[] sizes, String[] colors, int[] stock) {
+        if (stock.length != sizes.length * colors.length) {
+            throw new IllegalArgumentException(String.format("Shoes %s Expected %d Stock Counts, Got %d", id,
+                    sizes.length * colors.length, stock.length));
+        }
+
+        return new VariantStock(stock);
+    }
+
+    private static int[] flatten(Map<String, int[]> stockByColor, int sizes) {
+        int[] stock = new int[stockByColor.size() * sizes];
+        int color = 0;
+
+        for (Map.Entry<String, int[]> entry : stockByColor.entrySet()) {
+            if (entry.getValue().length != sizes) {
+                throw new IllegalArgumentException(String.format("Color %s Expected %d Stock Counts, Got %d",
+                        entry.getKey(), sizes, entry.getValue().length));
+            }
+
+            System.arraycopy(entry.getValue(), 0, stock, color++ * sizes, sizes);
+        }
+
+        return stock;
     }
 }
@@ -0,0 +1,129 @@
+import java.util.Arrays;
+
+/**
+ * This class represents a thread-safe map from primitive int keys to values,
+ * used by the ECommerceSystem to store orders that many threads place, ship,
+ * and cancel at the same time. The map is split into segments, each of which
+ * is an {@link IntMap} guarded by its own monitor. A key always belongs to the
+ * same segment, so threads working on different keys rarely contend.
+ *
+ * Every single operation is atomic. Operations over the whole map, such as
+ * {@link #sortedKeys()}, visit the segments one at a time and are therefore
+ * not a consistent snapshot of the whole map.
+ *
+ * @author Ali Rizvi (501039655)
+ * @param <V> The type of the values.
+ * @see IntMap
+ * @see ECommerceSystem
+ */
+public class StripedIntMap<V> {
+    private final IntMap<V>[] segments;
+
+    /**
+     * Constructs a new empty map with a number of segments based on the number of
+     * available processors.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" }) // generic arrays cannot be created directly
+    public StripedIntMap() {
+        int size = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4 - 1) << 1;
+
+        segments = (IntMap<V>[]) new IntMap[size];
+        for (int i = 0; i < size; i++) {
+            segments[i] = new IntMap<>();
+        }
+    }
+
+    /**
+     * Finds the value associated with a key.
+     *
+     * @param key The key to find.
+     * @return The value associated with the key, or null if the key is not in the
+     *         map.
+     */
+    public V get(int key) {
+        IntMap<V> segment = segmentFor(key);
+
+        synchronized (segment) {
+            return segment.get(key);
+        }
+    }
+
+    /**
+     * Associates a value with a key, replacing any previous value.
+     *
+     * @param key   The key.
+     * @param value The value, which cannot be null.
+     * @return The previous value associated with the key, or null if there was
+     *         none.
+     */
+    public V put(int key, V value) {
+        IntMap<V> segment = segmentFor(key);
+
+        synchronized (segment) {
+            return segment.put(key, value);
+        }
+    }
+
+    /**
+     * Removes a key and its value from the map. When several threads remove the
+     * same key, exactly one of them receives the value.
+     *
+     * @param key The key to remove.
+     * @return The value that was associated with the key, or null if the key was
+     *         not in the map.
+     */
+    public V remove(int key) {
+        IntMap<V> segment = segmentFor(key);
+
+        synchronized (segment) {
+            return segment.remove(key);
+        }
+    }
+
+    /**
+     * Getter for the number of entries in the map.
+     *
+     * @return The number of entries in the map.
+     */
+    public int size() {
+        int size = 0;
+
+        for (IntMap<V> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+
+        return size;
+    }
+
+    /**
+     * Getter for the keys of the map, in ascending order.
+     *
+     * @return A new array with every key of the map, in ascending order.
+     */
+    public int[] sortedKeys() {
+        int[][] segmentKeys = new int[segments.length][];
+        int length = 0;
+
+        for (int i = 0; i < segments.length; i++) {
+            synchronized (segments[i]) {
+                segmentKeys[i] = segments[i].sortedKeys();
+            }
+
+            length += segmentKeys[i].length;
+        }
+
+        int[] keys = new int[length];
+        for (int i = 0, offset = 0; i < segmentKeys.length; offset += segmentKeys[i++].length) {
+            System.arraycopy(segmentKeys[i], 0, keys, offset, segmentKeys[i].length);
+        }
+
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    private IntMap<V> segmentFor(int key) {
+        return segments[key & (segments.length - 1)]; // sequential keys spread evenly
+    }
+}
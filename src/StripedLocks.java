@@ -0,0 +1,51 @@
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class represents a fixed set of locks that the ECommerceSystem stripes
+ * its customer IDs across, to guard the cart of every customer. Each key
+ * always maps to the same lock, and unrelated keys usually map to different
+ * locks, so threads working on unrelated customers rarely contend.
+ *
+ * Unrelated keys can share a lock, so a thread must never hold the locks of
+ * two keys at once.
+ *
+ * @author Ali Rizvi (501039655)
+ * @see ECommerceSystem
+ */
+public class StripedLocks {
+    private final ReentrantLock[] locks;
+
+    /**
+     * Constructs a new set of locks. The number of stripes is rounded up to the
+     * next power of two.
+     *
+     * @param stripes The minimum number of stripes.
+     */
+    public StripedLocks(int stripes) {
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+
+        locks = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Constructs a new set of locks with a number of stripes based on the number
+     * of available processors.
+     */
+    public StripedLocks() {
+        this(Runtime.getRuntime().availableProcessors() * 16);
+    }
+
+    /**
+     * Getter for the lock that a key maps to.
+     *
+     * @param key The key.
+     * @return The lock of the key.
+     */
+    public ReentrantLock get(String key) {
+        int h = key.hashCode() * 0x9E3779B9; // String caches its hash code, so this never allocates
+        return locks[(h ^ (h >>> 16)) & (locks.length - 1)];
+    }
+}
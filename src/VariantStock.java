@@ -0,0 +1,112 @@
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * This class represents the stock of every variant of a product in the
+ * ECommerceSystem. The stock is stored in a single dense array indexed by the
+ * variant, as parsed by {@link Product#parseOptions(String)}, so each variant
+ * costs exactly one int and checking or changing its stock takes constant
+ * time.
+ *
+ * The stock is lock-free. Reserving a unit checks and decrements the stock in
+ * a single compare-and-set, so any number of threads can reserve the same
+ * variant at once without blocking, and the stock can never be oversold.
+ *
+ * Variants outside of the range of this stock never have any stock available,
+ * and changes to them are ignored.
+ *
+ * @author Ali Rizvi (501039655)
+ * @see Product
+ */
+public class VariantStock {
+    private final AtomicIntegerArray stock;
+
+    /**
+     * Constructs a new stock with the given stock counts, one for each variant.
+     * The stock counts are copied.
+     *
+     * @param stock The stock count of each variant, indexed by variant.
+     */
+    public VariantStock(int[] stock) {
+        this.stock = new AtomicIntegerArray(stock);
+    }
+
+    /**
+     * Getter for the number of variants in this stock.
+     *
+     * @return The number of variants in this stock.
+     */
+    public int size() {
+        return stock.length();
+    }
+
+    /**
+     * Getter for the stock count of a variant.
+     *
+     * @param variant The variant.
+     * @return The stock count of the variant, or 0 if the variant is out of range.
+     */
+    public int get(int variant) {
+        return contains(variant) ? stock.get(variant) : 0;
+    }
+
+    /**
+     * Validates if there is stock available for a variant. The answer may be out
+     * of date as soon as it is returned, use {@link #tryReserve(int)} to actually
+     * take a unit of stock.
+     *
+     * @param variant The variant.
+     * @return True if the variant is in range and has stock available.
+     */
+    public boolean has(int variant) {
+        return contains(variant) && stock.get(variant) > 0;
+    }
+
+    /**
+     * Atomically reduces the stock count of a variant by one, but only if it has
+     * stock available.
+     *
+     * @param variant The variant.
+     * @return True if the variant had stock available and a unit was reserved.
+     */
+    public boolean tryReserve(int variant) {
+        if (!contains(variant)) {
+            return false;
+        }
+
+        for (int count = stock.get(variant); count > 0; count = stock.get(variant)) {
+            if (stock.compareAndSet(variant, count, count - 1)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Atomically increases the stock count of a variant by one, returning a unit
+     * that was reserved.
+     *
+     * @param variant The variant.
+     */
+    public void release(int variant) {
+        if (contains(variant)) {
+            stock.incrementAndGet(variant);
+        }
+    }
+
+    /**
+     * Atomically reduces the stock count of a variant by one, even if it has no
+     * stock available.
+     *
+     * @param variant The variant.
+     */
+    public void reduce(int variant) {
+        if (contains(variant)) {
+            stock.decrementAndGet(variant);
+        }
+    }
+
+    private boolean contains(int variant) {
+        return variant >= 0 && variant < stock.length();
+    }
+}
@@ -0,0 +1,85 @@
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * This class represents the product catalog of the ECommerceSystem as a series
+ * of immutable, versioned snapshots. Readers take the current snapshot and can
+ * query it as long as they like without taking a lock, and never see an update
+ * that is only partly applied.
+ *
+ * Writers never modify a published snapshot. An update copies the current
+ * snapshot, applies its changes to the copy, and publishes the copy as the next
+ * version. Copying costs as much as the size of the catalog, so many changes
+ * should be applied in a single {@link #update(Consumer)}. Updates are
+ * serialized against each other, but never wait for readers.
+ *
+ * The stock of a product is not part of the snapshot. It is kept by the
+ * product itself, which is shared by every version of the catalog, so orders
+ * change stock without publishing a new version.
+ *
+ * @author Ali Rizvi (501039655)
+ * @see ProductCatalog
+ * @see ECommerceSystem
+ */
+public class VersionedCatalog {
+    private final AtomicReference<ProductCatalog> current;
+
+    /**
+     * Constructs a new catalog whose first version is empty.
+     */
+    public VersionedCatalog() {
+        ProductCatalog empty = new ProductCatalog();
+        empty.freeze();
+
+        current = new AtomicReference<>(empty);
+    }
+
+    /**
+     * Getter for the current snapshot of the catalog.
+     *
+     * @return The current snapshot, which is read-only.
+     */
+    public ProductCatalog snapshot() {
+        return current.get();
+    }
+
+    /**
+     * Applies changes to a copy of the current snapshot, and publishes the copy as
+     * the next version. If the changes throw an exception, nothing is published.
+     *
+     * @param changes The changes to apply to the copy.
+     * @return The snapshot that was published.
+     */
+    public synchronized ProductCatalog update(Consumer<ProductCatalog> changes) {
+        ProductCatalog next = current.get().copy();
+
+        changes.accept(next);
+        next.freeze();
+
+        current.set(next);
+        return next;
+    }
+
+    /**
+     * Adds a product to the catalog, publishing a new version.
+     *
+     * @param product The product to add.
+     *
+     * @throws IllegalArgumentException If the product cannot be added, see
+     *                                  {@link ProductCatalog#add(Product)}.
+     */
+    public void add(Product product) {
+        update(catalog -> catalog.add(product));
+    }
+
+    /**
+     * Removes a product from the catalog, publishing a new version.
+     *
+     * @param productId The unique identifier of the product to remove.
+     *
+     * @throws Product.NotFoundException If the product is not in the catalog.
+     */
+    public void remove(String productId) {
+        update(catalog -> catalog.remove(productId));
+    }
+}